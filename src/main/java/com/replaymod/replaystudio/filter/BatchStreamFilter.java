@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.filter;
+
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.stream.PacketStream;
+
+import java.io.IOException;
+
+/**
+ * A stream filter which processes consecutive packets in batches instead of one at a time.
+ */
+public interface BatchStreamFilter extends StreamFilter {
+
+    /**
+     * Called with consecutive packets to which this filter applies.
+     * Packets inserted into the stream from within this method are placed after the whole batch.
+     * @param stream The stream
+     * @param packets The packets, only the first {@code length} entries are valid. The array is reused between calls.
+     *                Entries may be replaced with a different {@link PacketData} for the same packet (e.g. one with a
+     *                changed timestamp) which is then passed on in place of the original one.
+     * @param keep Whether to keep the packet at the same index, initially all {@code true}.
+     *             Packets which are not kept are released afterwards.
+     * @param length Number of packets in this batch
+     */
+    void onPackets(PacketStream stream, PacketData[] packets, boolean[] keep, int length) throws IOException;
+
+    @Override
+    default boolean onPacket(PacketStream stream, PacketData data) throws IOException {
+        boolean[] keep = {true};
+        onPackets(stream, new PacketData[]{data}, keep, 1);
+        return keep[0];
+    }
+}
@@ -18,14 +18,43 @@
  */
 package com.replaymod.replaystudio.filter;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.replaymod.replaystudio.PacketData;
 import com.replaymod.replaystudio.Studio;
 import com.replaymod.replaystudio.stream.PacketStream;
 
-public class ChangeTimestampFilter implements StreamFilter {
+import java.util.Arrays;
+
+/**
+ * Maps the timestamp of every packet to a new one.
+ *
+ * The mapping is configured by
+ * <ul>
+ *     <li>{@code offset}: milliseconds added to every timestamp (default 0)</li>
+ *     <li>{@code scale}: factor by which all timestamps are multiplied before the offset is added (default 1)</li>
+ *     <li>{@code ramps}: list of {@code {"from": <ms>, "speed": <factor>}} objects. Starting at the given
+ *     (original) timestamp, time passes {@code speed} times as fast until the next ramp, e.g. a speed of 10 turns
+ *     ten seconds into one. Time passes at normal speed before the first ramp.</li>
+ * </ul>
+ * The mapping is non-decreasing (distinct timestamps may be mapped to the same one after rounding), so packet order
+ * is preserved.
+ * As a batch filter, timestamps are rewritten directly in the batch instead of re-inserting every packet.
+ */
+public class ChangeTimestampFilter implements BatchStreamFilter {
 
     private long offset;
+    private double scale;
+
+    /**
+     * Original timestamps at which each ramp starts, sorted ascending. Empty if there are no ramps.
+     */
+    private long[] rampFrom;
+    /**
+     * Mapped (but not yet scaled) timestamp at which each ramp starts.
+     */
+    private double[] rampTo;
+    private double[] rampSpeed;
 
     @Override
     public String getName() {
@@ -34,7 +63,61 @@ public class ChangeTimestampFilter implements StreamFilter {
 
     @Override
     public void init(Studio studio, JsonObject config) {
-        offset = config.get("offset").getAsLong();
+        offset = config.has("offset") ? config.get("offset").getAsLong() : 0;
+        scale = config.has("scale") ? config.get("scale").getAsDouble() : 1;
+        if (!(scale > 0)) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+
+        JsonArray ramps = config.has("ramps") ? config.getAsJsonArray("ramps") : new JsonArray();
+        long[][] sorted = new long[ramps.size()][];
+        double[] speeds = new double[ramps.size()];
+        for (int i = 0; i < ramps.size(); i++) {
+            JsonObject ramp = ramps.get(i).getAsJsonObject();
+            double speed = ramp.get("speed").getAsDouble();
+            if (!(speed > 0)) {
+                throw new IllegalArgumentException("Ramp speed must be positive: " + ramp);
+            }
+            speeds[i] = speed;
+            sorted[i] = new long[]{ramp.get("from").getAsLong(), i};
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+
+        rampFrom = new long[sorted.length];
+        rampTo = new double[sorted.length];
+        rampSpeed = new double[sorted.length];
+        long prevFrom = 0;
+        double prevTo = 0;
+        double prevSpeed = 1;
+        for (int i = 0; i < sorted.length; i++) {
+            rampFrom[i] = sorted[i][0];
+            rampTo[i] = prevTo + (rampFrom[i] - prevFrom) / prevSpeed;
+            rampSpeed[i] = speeds[(int) sorted[i][1]];
+            prevFrom = rampFrom[i];
+            prevTo = rampTo[i];
+            prevSpeed = rampSpeed[i];
+        }
+    }
+
+    /**
+     * Maps the given timestamp.
+     * This method is stateless, so it may be called concurrently (see {@link #isSegmentSafe()}).
+     * @param time The original timestamp
+     * @return The new timestamp
+     */
+    public long map(long time) {
+        if (rampFrom.length == 0 || time < rampFrom[0]) {
+            if (scale == 1) {
+                return time + offset;
+            }
+            return Math.round(time * scale) + offset;
+        }
+        int index = Arrays.binarySearch(rampFrom, time);
+        if (index < 0) {
+            index = -index - 2; // last ramp starting before the given time
+        }
+        double mapped = rampTo[index] + (time - rampFrom[index]) / rampSpeed[index];
+        return Math.round(mapped * scale) + offset;
     }
 
     @Override
@@ -42,9 +125,30 @@ public class ChangeTimestampFilter implements StreamFilter {
 
     }
 
+    @Override
+    public boolean isSegmentSafe() {
+        return true;
+    }
+
+    @Override
+    public void onPackets(PacketStream stream, PacketData[] packets, boolean[] keep, int length) {
+        for (int i = 0; i < length; i++) {
+            PacketData data = packets[i];
+            long time = map(data.getTime());
+            if (time != data.getTime()) {
+                packets[i] = new PacketData(time, data.getPacket());
+            }
+        }
+    }
+
     @Override
     public boolean onPacket(PacketStream stream, PacketData data) {
-        stream.insert(new PacketData(data.getTime() + offset, data.getPacket()));
+        long time = map(data.getTime());
+        if (time == data.getTime()) {
+            return true;
+        }
+        // The original packet data is released by the stream since we do not keep it
+        stream.insert(new PacketData(time, data.getPacket().retain()));
         return false;
     }
 
@@ -29,7 +29,7 @@ import org.apache.commons.lang3.mutable.MutableInt;
 import java.util.EnumMap;
 import java.util.Map;
 
-public class PacketCountFilter implements StreamFilter {
+public class PacketCountFilter implements BatchStreamFilter {
 
     private final EnumMap<PacketType, MutableInt> count = new EnumMap<>(PacketType.class);
 
@@ -49,11 +49,17 @@ public class PacketCountFilter implements StreamFilter {
     }
 
     @Override
-    public boolean onPacket(PacketStream stream, PacketData data) {
-        PacketType type = data.getPacket().getType();
-
-        count.computeIfAbsent(type, key -> new MutableInt()).increment();
-        return true;
+    public void onPackets(PacketStream stream, PacketData[] packets, boolean[] keep, int length) {
+        PacketType lastType = null;
+        MutableInt lastCount = null;
+        for (int i = 0; i < length; i++) {
+            PacketType type = packets[i].getPacket().getType();
+            if (lastCount == null || type != lastType) {
+                lastType = type;
+                lastCount = count.computeIfAbsent(type, key -> new MutableInt());
+            }
+            lastCount.increment();
+        }
     }
 
     @Override
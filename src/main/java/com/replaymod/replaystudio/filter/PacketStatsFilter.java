@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.filter;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.Studio;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.packets.PacketBlockChange;
+import com.replaymod.replaystudio.stream.PacketStream;
+import com.replaymod.replaystudio.util.IPosition;
+import com.replaymod.replaystudio.util.PacketUtils;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.replaymod.replaystudio.protocol.packets.PacketChunkData.Column.coordToLong;
+import static com.replaymod.replaystudio.protocol.packets.PacketChunkData.Column.longToX;
+import static com.replaymod.replaystudio.protocol.packets.PacketChunkData.Column.longToZ;
+
+/**
+ * Collects statistics on which packets take up how much space, to find out what to strip from oversized replays.
+ * Records count, total and max size per packet type, size per type and time bucket, as well as the entities with the
+ * most packet data and the chunks with the most block changes. The result is written as JSON on end of the stream.
+ * Config (all optional):
+ * <ul>
+ *     <li>{@code output}: file to write the JSON to, printed to stdout if not given</li>
+ *     <li>{@code bucket}: length of time buckets in milliseconds, defaults to one minute</li>
+ *     <li>{@code top}: number of entities/chunks to be listed, defaults to 20</li>
+ * </ul>
+ */
+public class PacketStatsFilter implements BatchStreamFilter {
+    private static final PacketType[] TYPES = PacketType.values();
+
+    private String output;
+    private long bucketLength = 60_000;
+    private int top = 20;
+
+    private long[] counts;
+    private long[] totalBytes;
+    private int[] maxBytes;
+    private LongArrayList[] bucketBytes;
+    private HeavyHitters entities;
+    private HeavyHitters chunks;
+
+    @Override
+    public String getName() {
+        return "packet_stats";
+    }
+
+    @Override
+    public void init(Studio studio, JsonObject config) {
+        if (config.has("output")) {
+            output = config.get("output").getAsString();
+        }
+        if (config.has("bucket")) {
+            bucketLength = config.get("bucket").getAsLong();
+        }
+        if (config.has("top")) {
+            top = config.get("top").getAsInt();
+        }
+    }
+
+    @Override
+    public void onStart(PacketStream stream) {
+        counts = new long[TYPES.length];
+        totalBytes = new long[TYPES.length];
+        maxBytes = new int[TYPES.length];
+        bucketBytes = new LongArrayList[TYPES.length];
+        // The sketches track a multiple of the requested amount to keep the error on the reported entries low
+        entities = new HeavyHitters(top * 16);
+        chunks = new HeavyHitters(top * 16);
+    }
+
+    @Override
+    public void onPackets(PacketStream stream, PacketData[] packets, boolean[] keep, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            PacketData data = packets[i];
+            Packet packet = data.getPacket();
+            int type = packet.getType().ordinal();
+            int bytes = packet.getBuf().readableBytes();
+
+            counts[type]++;
+            totalBytes[type] += bytes;
+            if (bytes > maxBytes[type]) {
+                maxBytes[type] = bytes;
+            }
+            LongArrayList buckets = bucketBytes[type];
+            if (buckets == null) {
+                buckets = bucketBytes[type] = new LongArrayList();
+            }
+            int bucket = (int) (data.getTime() / bucketLength);
+            while (buckets.size() <= bucket) {
+                buckets.add(0);
+            }
+            buckets.set(bucket, buckets.getLong(bucket) + bytes);
+
+            List<Integer> entityIds = PacketUtils.getEntityIds(packet);
+            for (int j = 0; j < entityIds.size(); j++) {
+                entities.add(entityIds.get(j), bytes);
+            }
+
+            PacketType packetType = packet.getType();
+            if (packetType == PacketType.BlockChange || packetType == PacketType.MultiBlockChange) {
+                for (PacketBlockChange change : PacketBlockChange.readSingleOrBulk(packet)) {
+                    IPosition pos = change.getPosition();
+                    chunks.add(coordToLong(pos.getX() >> 4, pos.getZ() >> 4), 1);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onEnd(PacketStream stream, long timestamp) throws IOException {
+        JsonObject root = new JsonObject();
+        root.addProperty("duration", timestamp);
+        root.addProperty("bucketLength", bucketLength);
+
+        JsonArray types = new JsonArray();
+        Integer[] order = new Integer[TYPES.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(totalBytes[b], totalBytes[a]));
+        for (int i : order) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            JsonObject type = new JsonObject();
+            type.addProperty("type", TYPES[i].name());
+            type.addProperty("count", counts[i]);
+            type.addProperty("totalBytes", totalBytes[i]);
+            type.addProperty("maxBytes", maxBytes[i]);
+            JsonArray buckets = new JsonArray();
+            for (long bytes : bucketBytes[i]) {
+                buckets.add(new JsonPrimitive(bytes));
+            }
+            type.add("bytesPerBucket", buckets);
+            types.add(type);
+        }
+        root.add("types", types);
+
+        JsonArray topEntities = new JsonArray();
+        for (int i : entities.top(top)) {
+            JsonObject entity = new JsonObject();
+            entity.addProperty("id", (int) entities.keys[i]);
+            entity.addProperty("bytes", entities.counts[i]);
+            entity.addProperty("maxError", entities.errors[i]);
+            topEntities.add(entity);
+        }
+        root.add("topEntities", topEntities);
+
+        JsonArray topChunks = new JsonArray();
+        for (int i : chunks.top(top)) {
+            JsonObject chunk = new JsonObject();
+            chunk.addProperty("x", longToX(chunks.keys[i]));
+            chunk.addProperty("z", longToZ(chunks.keys[i]));
+            chunk.addProperty("blockChanges", chunks.counts[i]);
+            chunk.addProperty("maxError", chunks.errors[i]);
+            topChunks.add(chunk);
+        }
+        root.add("topChunks", topChunks);
+
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(root);
+        if (output != null) {
+            try (Writer writer = new OutputStreamWriter(Files.newOutputStream(Paths.get(output)), StandardCharsets.UTF_8)) {
+                writer.write(json);
+            }
+        } else {
+            System.out.println(json);
+        }
+    }
+
+    /**
+     * Space-Saving sketch: tracks the approximately heaviest keys in fixed memory.
+     * Each reported weight overestimates the true one by at most the reported error.
+     */
+    private static class HeavyHitters {
+        private final Long2IntOpenHashMap slots = new Long2IntOpenHashMap();
+        private final long[] keys;
+        private final long[] counts;
+        private final long[] errors;
+        private int size;
+
+        HeavyHitters(int capacity) {
+            this.keys = new long[capacity];
+            this.counts = new long[capacity];
+            this.errors = new long[capacity];
+            this.slots.defaultReturnValue(-1);
+        }
+
+        void add(long key, long weight) {
+            int slot = slots.get(key);
+            if (slot == -1) {
+                if (size < keys.length) {
+                    slot = size++;
+                } else {
+                    // Replace the lightest entry, inheriting its weight as error
+                    slot = 0;
+                    for (int i = 1; i < size; i++) {
+                        if (counts[i] < counts[slot]) {
+                            slot = i;
+                        }
+                    }
+                    slots.remove(keys[slot]);
+                    errors[slot] = counts[slot];
+                }
+                keys[slot] = key;
+                slots.put(key, slot);
+            }
+            counts[slot] += weight;
+        }
+
+        int[] top(int n) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+            int[] result = new int[Math.min(n, size)];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = order[i];
+            }
+            return result;
+        }
+    }
+}
@@ -18,17 +18,47 @@
  */
 package com.replaymod.replaystudio.filter;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.replaymod.replaystudio.PacketData;
 import com.replaymod.replaystudio.Studio;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.protocol.Packet;
 import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.stream.PacketStream;
+import com.replaymod.replaystudio.util.PacketUtils;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 
-import java.util.function.Predicate;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
 
-public class RemoveFilter implements StreamFilter {
+/**
+ * Removes packets from the stream.
+ * Config (all optional, each entry may be a single value or an array):
+ * <ul>
+ *     <li>{@code type}: names of {@link PacketType}s to be removed</li>
+ *     <li>{@code state}: names of protocol {@link State}s, all packets of these states are removed</li>
+ *     <li>{@code entity}: entity ids, only packets concerning one of these entities are removed (packets concerning
+ *     multiple entities, e.g. DestroyEntities, are removed if any of them is one of these)</li>
+ * </ul>
+ * If neither types nor states are given, packets of any type are removed. If no entity ids are given, packets are
+ * removed regardless of their entity.
+ */
+public class RemoveFilter implements BatchStreamFilter {
+
+    private Set<PacketType> types = null;
+    private IntSet entityIds = null;
 
-    private Predicate<PacketData> filter = packetData -> true;
+    /**
+     * Lookup table by raw packet id for the registry of the last packet.
+     * Immutable, so it may be replaced concurrently when the filter is applied to multiple segments at once.
+     */
+    private volatile IdTable idTable;
 
     @Override
     public String getName() {
@@ -37,11 +67,45 @@ public class RemoveFilter implements StreamFilter {
 
     @Override
     public void init(Studio studio, JsonObject config) {
+        Set<PacketType> types = null;
         if (config.has("type")) {
-            String name = config.get("type").getAsString();
-            PacketType type = PacketType.valueOf(name);
-            filter = (d) -> d.getPacket().getType() == type;
+            types = EnumSet.noneOf(PacketType.class);
+            for (JsonElement element : asArray(config.get("type"))) {
+                types.add(PacketType.valueOf(element.getAsString()));
+            }
+        }
+        if (config.has("state")) {
+            if (types == null) {
+                types = EnumSet.noneOf(PacketType.class);
+            }
+            for (JsonElement element : asArray(config.get("state"))) {
+                State state = State.valueOf(element.getAsString());
+                for (PacketType type : PacketType.values()) {
+                    if (type.getState() == state) {
+                        types.add(type);
+                    }
+                }
+            }
         }
+        IntSet entityIds = null;
+        if (config.has("entity")) {
+            entityIds = new IntOpenHashSet();
+            for (JsonElement element : asArray(config.get("entity"))) {
+                entityIds.add(element.getAsInt());
+            }
+        }
+        this.types = types == null ? null : Collections.unmodifiableSet(types);
+        this.entityIds = entityIds;
+        this.idTable = null;
+    }
+
+    private static JsonArray asArray(JsonElement element) {
+        if (element.isJsonArray()) {
+            return element.getAsJsonArray();
+        }
+        JsonArray array = new JsonArray();
+        array.add(element);
+        return array;
     }
 
     @Override
@@ -50,12 +114,74 @@ public class RemoveFilter implements StreamFilter {
     }
 
     @Override
-    public boolean onPacket(PacketStream stream, PacketData data) {
-        return !filter.test(data);
+    public boolean isSegmentSafe() {
+        return true;
+    }
+
+    @Override
+    public void onPackets(PacketStream stream, PacketData[] packets, boolean[] keep, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            keep[i] = !matches(packets[i].getPacket());
+        }
+    }
+
+    private boolean matches(Packet packet) throws IOException {
+        if (types != null) {
+            IdTable idTable = this.idTable;
+            if (idTable == null || idTable.registry != packet.getRegistry()) {
+                this.idTable = idTable = new IdTable(packet.getRegistry(), types);
+            }
+            if (!idTable.contains(packet.getId())) {
+                return false;
+            }
+        }
+        if (entityIds != null) {
+            Integer entityId = PacketUtils.getEntityId(packet);
+            if (entityId == null) {
+                return false;
+            }
+            if (entityId == -1) { // Multiple entities
+                for (int id : PacketUtils.getEntityIds(packet)) {
+                    if (entityIds.contains(id)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return entityIds.contains((int) entityId);
+        }
+        return true;
     }
 
     @Override
     public void onEnd(PacketStream stream, long timestamp) {
 
     }
+
+    private static class IdTable {
+        private final PacketTypeRegistry registry;
+        private final boolean[] ids;
+
+        IdTable(PacketTypeRegistry registry, Set<PacketType> types) {
+            this.registry = registry;
+            int maxId = -1;
+            for (PacketType type : types) {
+                Integer id = registry.getId(type);
+                if (id != null && id > maxId) {
+                    maxId = id;
+                }
+            }
+            this.ids = new boolean[maxId + 1];
+            for (PacketType type : types) {
+                Integer id = registry.getId(type);
+                if (id != null) {
+                    ids[id] = true;
+                }
+            }
+        }
+
+        boolean contains(int id) {
+            return id >= 0 && id < ids.length && ids[id];
+        }
+    }
 }
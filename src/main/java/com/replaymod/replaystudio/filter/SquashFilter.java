@@ -740,6 +740,8 @@ public class SquashFilter implements StreamFilter {
         result.addAll(mainInventoryChanges.values());
         result.addAll(latestOnly.values());
         unhandled.clear();
+        currentPlayPhase.clear();
+        currentJoinGame.clear();
         currentWorld.clear();
         currentWindow.clear();
         closeWindows.clear();
@@ -67,4 +67,16 @@ public interface StreamFilter {
      */
     void onEnd(PacketStream stream, long timestamp) throws IOException;
 
+    /**
+     * Returns whether this filter may be applied to consecutive segments of a stream independently (each one
+     * starting and ending on its own) and concurrently, with the concatenated results being identical to applying it
+     * to the whole stream.
+     * This requires the filter to not carry any state from one packet to the next and to be thread-safe.
+     * @return {@code true} if this filter is segment-safe, {@code false} otherwise
+     * @see com.replaymod.replaystudio.stream.SegmentedPacketProcessor
+     */
+    default boolean isSegmentSafe() {
+        return false;
+    }
+
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.io;
+
+import com.github.steveice10.netty.buffer.ByteBuf;
+import com.github.steveice10.netty.buffer.ByteBufAllocator;
+import com.github.steveice10.netty.buffer.PooledByteBufAllocator;
+import com.github.steveice10.packetlib.tcp.io.ByteBufNetInput;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import com.replaymod.replaystudio.replay.ReplayMetaData;
+import com.replaymod.replaystudio.stream.AbstractPacketStream;
+import com.replaymod.replaystudio.stream.PacketStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import static com.replaymod.replaystudio.util.Utils.readInt;
+
+/**
+ * Input stream for reading packet data exactly as it is stored in the replay file.
+ *
+ * Unlike {@link ReplayInputStream}, no conversion to a different protocol version happens and no packets are modified
+ * or dropped. Only the protocol state is tracked, so each packet has the correct {@link PacketTypeRegistry}.
+ * This makes it suitable for jobs which only cut, shift or drop packets and write them back in the same version (e.g.
+ * via {@link ReplayOutputStream}), without paying for decoding and re-encoding every packet.
+ */
+public class RawReplayInputStream extends InputStream {
+
+    private static final ByteBufAllocator ALLOC = PooledByteBufAllocator.DEFAULT;
+
+    private final InputStream in;
+    private PacketTypeRegistry registry;
+
+    /**
+     * @param in The actual input stream.
+     * @param fileFormatVersion The file format version of the replay packet data
+     * @param fileProtocol The MC protocol version of the replay packet data
+     */
+    public RawReplayInputStream(InputStream in, int fileFormatVersion, int fileProtocol) {
+        boolean includeLoginPhase = fileFormatVersion >= 14;
+        this.in = in;
+        this.registry = PacketTypeRegistry.get(ReplayMetaData.getProtocolVersion(fileFormatVersion, fileProtocol),
+                includeLoginPhase ? State.LOGIN : State.PLAY);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return in.read();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Returns the registry which will be used for the next packet.
+     */
+    public PacketTypeRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Read the next packet from this input stream.
+     * @return The packet or {@code null} if the end of the stream has been reached
+     * @throws IOException if an I/O error occurs.
+     */
+    public PacketData readPacket() throws IOException {
+        while (true) {
+            int time = readInt(in);
+            int length = readInt(in);
+            if (time == -1 || length == -1) {
+                return null; // reached end of stream
+            }
+            if (length == 0) {
+                continue; // skip empty segments
+            }
+
+            ByteBuf buf = ALLOC.buffer(length);
+            while (length > 0) {
+                int read = buf.writeBytes(in, length);
+                if (read == -1) {
+                    buf.release();
+                    throw new EOFException();
+                }
+                length -= read;
+            }
+
+            int packetId = new ByteBufNetInput(buf).readVarInt();
+            Packet packet = new Packet(registry, packetId, registry.getType(packetId), buf);
+            switch (packet.getType()) {
+                case LoginSuccess:
+                    registry = registry.withLoginSuccess();
+                    break;
+                case Reconfigure:
+                    registry = registry.withState(State.CONFIGURATION);
+                    break;
+                case ConfigFinish:
+                    registry = registry.withState(State.PLAY);
+                    break;
+            }
+            return new PacketData(time, packet);
+        }
+    }
+
+    /**
+     * Wraps this {@link RawReplayInputStream} into a {@link PacketStream}.
+     * Closing the packet stream does not close this input stream.
+     */
+    public PacketStream asPacketStream() {
+        return new AbstractPacketStream() {
+            @Override
+            protected PacketData nextInput() {
+                try {
+                    return readPacket();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void start() {
+
+            }
+
+            @Override
+            protected void cleanup() {
+
+            }
+        };
+    }
+}
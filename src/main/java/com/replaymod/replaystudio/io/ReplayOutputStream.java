@@ -34,9 +34,12 @@ import com.replaymod.replaystudio.replay.ReplayMetaData;
 import com.replaymod.replaystudio.studio.ReplayStudio;
 import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -76,6 +79,11 @@ public class ReplayOutputStream extends OutputStream {
 
     private boolean loginPhase = true;
 
+    /**
+     * Listeners which are notified of every packet written.
+     */
+    private final List<PacketListener> listeners = new ArrayList<>();
+
     /**
      * Creates a new replay output stream which will not compress packets written to it nor write any meta data.
      * The resulting output can be read directly by a {@link ReplayInputStream}.
@@ -120,6 +128,16 @@ public class ReplayOutputStream extends OutputStream {
         out.write(b);
     }
 
+    /**
+     * Adds a listener which will be notified of all packets written to this stream from now on (including the
+     * LoginSuccess packet inserted by this stream if required).
+     * The listener is closed when this stream is closed, after the underlying output stream has been closed.
+     * @param listener The listener
+     */
+    public void addListener(PacketListener listener) {
+        listeners.add(listener);
+    }
+
     /**
      * Writes the specified packet data to the underlying output stream.
      * @param data The packet data
@@ -154,6 +172,11 @@ public class ReplayOutputStream extends OutputStream {
 
         ByteBuf packetIdBuf = ALLOC.buffer();
         try {
+            for (PacketListener listener : listeners) {
+                // Listeners get their own view of the buffer since they may read it concurrently with us
+                listener.onPacket(new PacketData(time, packet.copy()));
+            }
+
             new ByteBufNetOutput(packetIdBuf).writeVarInt(packet.getId());
 
             int packetIdLen = packetIdBuf.readableBytes();
@@ -197,5 +220,21 @@ public class ReplayOutputStream extends OutputStream {
             zipOut.closeEntry();
         }
         out.close();
+
+        for (PacketListener listener : listeners) {
+            listener.close();
+        }
+    }
+
+    public interface PacketListener extends Closeable {
+        /**
+         * Called for each packet written to the stream.
+         * @param data The packet data, the listener is responsible for releasing it
+         */
+        void onPacket(PacketData data) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
     }
 }
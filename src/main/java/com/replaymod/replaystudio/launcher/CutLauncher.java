@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.launcher;
+
+import com.google.gson.JsonObject;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.Studio;
+import com.replaymod.replaystudio.filter.ChangeTimestampFilter;
+import com.replaymod.replaystudio.filter.SquashFilter;
+import com.replaymod.replaystudio.io.ReplayInputStream;
+import com.replaymod.replaystudio.io.ReplayOutputStream;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import com.replaymod.replaystudio.replay.ReplayFile;
+import com.replaymod.replaystudio.replay.ReplayMetaData;
+import com.replaymod.replaystudio.replay.ZipReplayFile;
+import com.replaymod.replaystudio.stream.IteratorStream;
+import com.replaymod.replaystudio.stream.PacketStream;
+import com.replaymod.replaystudio.studio.ReplayStudio;
+import com.replaymod.replaystudio.util.IOSupplier;
+import org.apache.commons.cli.CommandLine;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Launcher for the split (-p) and append (-a) modes.
+ * Both modes read their input(s) exactly once and hand the resulting packets to one writer thread per output file,
+ * so compressing and writing the outputs happens concurrently with reading and with each other.
+ * Every writer only buffers a bounded number of packets, hence memory usage does not depend on the replay length.
+ */
+public class CutLauncher {
+
+    /**
+     * Maximum number of packets buffered per output before the reading thread is blocked.
+     */
+    private static final int QUEUE_SIZE = 4096;
+
+    private final Studio studio = new ReplayStudio();
+
+    public void launch(CommandLine cmd) throws Exception {
+        if (cmd.hasOption('p')) {
+            split(cmd);
+        } else {
+            append(cmd);
+        }
+    }
+
+    private void split(CommandLine cmd) throws Exception {
+        String[] args = cmd.getArgs();
+        String[] times = cmd.getOptionValue('p').split(":");
+        long[] splits = new long[times.length];
+        for (int i = 0; i < times.length; i++) {
+            splits[i] = StreamLauncher.timeStampToMillis(times[i]);
+            if (i > 0 && splits[i] <= splits[i - 1]) {
+                throw new IllegalArgumentException("Split positions must be in ascending order: " + cmd.getOptionValue('p'));
+            }
+        }
+        if (args.length < splits.length + 2) {
+            throw new IllegalArgumentException("Expected one input and " + (splits.length + 1) + " output files"
+                    + " but got " + args.length + " files");
+        }
+        String[] outputs = Arrays.copyOfRange(args, 1, splits.length + 2);
+
+        long start = System.nanoTime();
+        System.out.println("Splitting replay into " + outputs.length + " parts at " + Arrays.toString(splits));
+
+        ReplayFile inFile = new ZipReplayFile(studio, new File(args[0]));
+        ReplayMetaData meta = inFile.getMetaData();
+        ProtocolVersion version = meta.getProtocolVersion();
+
+        List<Output> opened = new ArrayList<>();
+        try {
+            List<PartOutput> parts = new ArrayList<>();
+            for (String output : outputs) {
+                parts.add(open(output, version, meta, opened));
+            }
+            try (ReplayInputStream in = inFile.getPacketData(PacketTypeRegistry.get(version, State.LOGIN))) {
+                split(in::readPacket, splits, parts);
+            }
+        } finally {
+            close(opened);
+            inFile.close();
+        }
+
+        System.out.println("Done after " + (System.nanoTime() - start) + "ns");
+    }
+
+    /**
+     * Splits the given packets into parts in a single pass.
+     * Every part after the first one starts with the state at its start (as computed by a {@link SquashFilter}) and
+     * has its timestamps shifted such that it starts at 0.
+     * @param in The input packets, {@code null} marks the end
+     * @param splits The timestamps at which to split, in ascending order
+     * @param outputs The outputs of each part ({@code splits.length + 1}), {@code null} to skip a part.
+     *                Each output is finished once its part is complete.
+     */
+    static void split(IOSupplier<PacketData> in, long[] splits, List<? extends PartOutput> outputs) throws IOException {
+        // Squashing the state is only required up to the start of the last part which is actually saved
+        int lastSaved = -1;
+        for (int i = 0; i < outputs.size(); i++) {
+            if (outputs.get(i) != null) {
+                lastSaved = i;
+            }
+        }
+
+        SquashFilter squash = lastSaved > 0 ? new SquashFilter(null, null, null) : null;
+        try {
+            int part = 0;
+            long offset = 0;
+            PartOutput out = outputs.get(0);
+            PacketData data;
+            while ((data = in.get()) != null) {
+                while (part < splits.length && data.getTime() >= splits[part]) {
+                    // Begin the next part with the state accumulated up to here
+                    offset = splits[part++];
+                    if (out != null) {
+                        out.finish();
+                    }
+                    out = outputs.get(part);
+                    if (out != null) {
+                        boolean keep = part < lastSaved;
+                        for (PacketData prefix : squashState(squash, keep)) {
+                            out.write(prefix);
+                        }
+                        if (!keep) {
+                            squash = null; // all of its state has been passed on to the last saved part
+                        }
+                    }
+                }
+
+                if (squash != null) {
+                    squash.onPacket(null, data);
+                }
+                if (out != null) {
+                    out.write(offset == 0 ? data : new PacketData(data.getTime() - offset, data.getPacket()));
+                } else {
+                    data.release();
+                }
+            }
+            if (out != null) {
+                out.finish();
+            }
+        } finally {
+            if (squash != null) {
+                squash.release();
+            }
+        }
+    }
+
+    /**
+     * Emits the state of the specified squash filter, with all packets moved to the very start of the part.
+     * @param squash The filter which has been fed all packets so far
+     * @param keep Whether the filter will be used further, in which case a copy is emitted
+     * @return List of packets representing the current state
+     */
+    private static List<PacketData> squashState(SquashFilter squash, boolean keep) throws IOException {
+        List<PacketData> result = new ArrayList<>();
+        if (squash == null) {
+            return result;
+        }
+        // onEnd passes ownership of all the filter's state on to the result, so there is nothing left to be released
+        SquashFilter source = keep ? squash.copy() : squash;
+        source.onEnd(new IteratorStream(result.listIterator(), (PacketStream.FilterInfo) null), 0);
+        result.replaceAll(data -> data.getTime() == 0 ? data : new PacketData(0, data.getPacket()));
+        return result;
+    }
+
+    private void append(CommandLine cmd) throws Exception {
+        // The option itself consumes the first file
+        List<String> files = new ArrayList<>();
+        files.add(cmd.getOptionValue('a'));
+        files.addAll(Arrays.asList(cmd.getArgs()));
+        if (files.size() < 2) {
+            throw new IllegalArgumentException("Expected at least one input and one output file");
+        }
+        List<String> inputs = files.subList(0, files.size() - 1);
+        String output = files.get(files.size() - 1);
+
+        long start = System.nanoTime();
+        System.out.println("Concatenating " + inputs.size() + " replays");
+
+        List<Output> opened = new ArrayList<>();
+        try {
+            ProtocolVersion version = null;
+            Concatenation concat = new Concatenation();
+            long offset = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                ReplayFile inFile = new ZipReplayFile(studio, new File(inputs.get(i)));
+                ReplayMetaData meta = inFile.getMetaData();
+                if (version == null) {
+                    version = meta.getProtocolVersion();
+                    concat.out = open(output, version, meta, opened);
+                } else if (!version.equals(meta.getProtocolVersion())) {
+                    throw new IllegalArgumentException("Cannot append " + inputs.get(i) + " recorded with "
+                            + meta.getProtocolVersion() + " to a replay recorded with " + version);
+                }
+
+                ChangeTimestampFilter shift = new ChangeTimestampFilter();
+                JsonObject config = new JsonObject();
+                config.addProperty("offset", offset);
+                shift.init(studio, config);
+
+                PacketStream stream = inFile.getPacketData(PacketTypeRegistry.get(version, State.LOGIN)).asPacketStream();
+                stream.start();
+                stream.addFilter(shift);
+
+                concat.begin(i > 0, offset + meta.getDuration());
+                PacketData data;
+                while ((data = stream.next()) != null) {
+                    concat.add(data);
+                }
+                for (PacketData remaining : stream.end()) {
+                    concat.add(remaining);
+                }
+                inFile.close();
+                offset = concat.end;
+            }
+            if (concat.out != null) {
+                concat.out.finish();
+            }
+        } finally {
+            close(opened);
+        }
+
+        System.out.println("Done after " + (System.nanoTime() - start) + "ns");
+    }
+
+    /**
+     * Joins the (already time-shifted) packets of consecutive replays into one output.
+     */
+    static class Concatenation {
+        PartOutput out;
+        private PacketTypeRegistry lastPlayRegistry;
+        private boolean continued;
+        private boolean first;
+        private long end;
+
+        /**
+         * Starts the next replay.
+         * @param continued Whether the output already contains a previous replay
+         * @param end Minimum end timestamp of the replay (already shifted)
+         */
+        void begin(boolean continued, long end) {
+            this.continued = continued;
+            this.first = true;
+            this.end = end;
+        }
+
+        void add(PacketData data) throws IOException {
+            PacketTypeRegistry registry = data.getPacket().getRegistry();
+            if (continued && registry.getState() == State.LOGIN) {
+                // The output is already past the login phase
+                data.release();
+                return;
+            }
+            if (continued && first && registry.getState() == State.CONFIGURATION && lastPlayRegistry != null) {
+                // Re-enter the configuration phase like a server switch would
+                write(out, new PacketData(data.getTime(), new Packet(lastPlayRegistry, PacketType.Reconfigure)));
+            }
+            first = false;
+            if (registry.getState() == State.PLAY) {
+                lastPlayRegistry = registry;
+            }
+            end = Math.max(end, data.getTime());
+            write(out, data);
+        }
+    }
+
+    private static void write(PartOutput out, PacketData data) throws IOException {
+        if (out != null) {
+            out.write(data);
+        } else {
+            data.release();
+        }
+    }
+
+    private Output open(String path, ProtocolVersion version, ReplayMetaData meta, List<Output> opened) throws IOException {
+        if ("x".equals(path)) {
+            return null;
+        }
+        ReplayOutputStream out = new ReplayOutputStream(version,
+                new BufferedOutputStream(new FileOutputStream(path)), new ReplayMetaData(meta));
+        Output output = new Output(path, out);
+        opened.add(output);
+        return output;
+    }
+
+    /**
+     * Waits for all outputs to be written.
+     * @throws IOException The first exception which occurred while writing any of the outputs
+     */
+    private static void close(List<Output> outputs) throws IOException {
+        IOException failure = null;
+        for (Output output : outputs) {
+            try {
+                output.finish();
+                output.join();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Destination of the packets of a single part (or of the concatenated replay).
+     */
+    interface PartOutput {
+        /**
+         * @param data The next packet, ownership is passed on to the output
+         */
+        void write(PacketData data) throws IOException;
+
+        /**
+         * Signals that no more packets will be written.
+         */
+        void finish() throws IOException;
+    }
+
+    /**
+     * An output file written by its own thread.
+     */
+    private static class Output implements PartOutput {
+        private static final PacketData END = new PacketData(-1, null);
+
+        private final BlockingQueue<PacketData> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final ReplayOutputStream out;
+        private final Thread thread;
+        private volatile IOException failure;
+        private boolean finished;
+
+        Output(String path, ReplayOutputStream out) {
+            this.out = out;
+            this.thread = new Thread(this::run, "replaystudio-output-" + new File(path).getName());
+            this.thread.start();
+        }
+
+        private void run() {
+            try {
+                PacketData data;
+                while ((data = queue.take()) != END) {
+                    if (failure != null) {
+                        data.release();
+                        continue; // keep draining so the reading thread never blocks on a failed output
+                    }
+                    try {
+                        out.write(data); // releases the packet
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                out.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void write(PacketData data) throws IOException {
+            IOException failure = this.failure;
+            if (failure != null) {
+                data.release();
+                throw failure;
+            }
+            try {
+                queue.put(data);
+            } catch (InterruptedException e) {
+                data.release();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while writing packet", e);
+            }
+        }
+
+        /**
+         * Signals that no more packets will be written. Does not wait for the output to be completed.
+         */
+        @Override
+        public void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while finishing output", e);
+            }
+        }
+
+        void join() throws IOException {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for output", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -42,6 +42,11 @@ public class Launcher {
         options.addOption("c", "config", true, "Use the supplied string to load instructions.");
         options.addOption("s", "stream", true, "Use streams instead of loading whole replays into RAM." +
                 " (Only supported by stream filters)");
+        options.addOption("t", "threads", true, "Number of threads used with -s to filter segments of the replay in parallel." +
+                " (Only supported if all filters are segment-safe, otherwise the replay is processed sequentially)");
+        options.addOption("f", "raw-frames", false, "Used with -s to pass packets through the filters exactly as they" +
+                " are stored in the replay, without any protocol conversion. Much faster but only suitable for filters" +
+                " which do not need to understand the packets (e.g. cutting, shifting timestamps, removing types).");
         options.addOption("p", "parts", true, "Splits the first replay at the specified position. " +
                 "If supplied one timestamp either as milliseconds or as 10m37s420ms, splits at the target position. " +
                 "If supplied multiple timestamps separated by \":\", splits at every position.\n" +
@@ -87,6 +92,8 @@ public class Launcher {
 
         if (cmd.hasOption('s') || cmd.hasOption('q')) {
             new StreamLauncher().launch(cmd);
+        } else if (cmd.hasOption('p') || cmd.hasOption('a')) {
+            new CutLauncher().launch(cmd);
         } else if (cmd.hasOption('r')) {
             new ReverseLauncher().launch(cmd);
         } else if (cmd.hasOption('d')) {
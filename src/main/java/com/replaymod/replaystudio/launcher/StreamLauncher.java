@@ -23,6 +23,8 @@ import com.google.gson.JsonParser;
 import com.replaymod.replaystudio.PacketData;
 import com.replaymod.replaystudio.Studio;
 import com.replaymod.replaystudio.filter.StreamFilter;
+import com.replaymod.replaystudio.io.RawReplayInputStream;
+import com.replaymod.replaystudio.io.ReplayInputStream;
 import com.replaymod.replaystudio.io.ReplayOutputStream;
 import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
@@ -30,18 +32,27 @@ import com.replaymod.replaystudio.replay.ReplayFile;
 import com.replaymod.replaystudio.replay.ReplayMetaData;
 import com.replaymod.replaystudio.replay.ZipReplayFile;
 import com.replaymod.replaystudio.stream.PacketStream;
+import com.replaymod.replaystudio.stream.SegmentedPacketProcessor;
 import com.replaymod.replaystudio.studio.ReplayStudio;
+import com.replaymod.replaystudio.util.IOSupplier;
 import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
 import org.apache.commons.cli.CommandLine;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static java.lang.System.in;
 
 public class StreamLauncher {
 
+    /**
+     * Minimum number of packets per segment when filtering in parallel.
+     */
+    private static final int SEGMENT_SIZE = 8192;
+
     private final Studio studio = new ReplayStudio();
 
     public void launch(CommandLine cmd) throws IOException {
@@ -98,12 +109,50 @@ public class StreamLauncher {
         } else {
             out = null;
         }
-        PacketStream stream = inFile.getPacketData(PacketTypeRegistry.get(inputVersion, State.LOGIN)).asPacketStream();
+        int threads = cmd.hasOption('t') ? Integer.parseInt(cmd.getOptionValue('t')) : 1;
+        if (threads > 1 && !SegmentedPacketProcessor.supports(filters)) {
+            System.out.println("Not all filters are segment-safe, processing sequentially");
+            threads = 1;
+        }
+
+        // Raw mode skips protocol conversion entirely, packets are passed on (and written) exactly as recorded
+        boolean raw = cmd.hasOption('f');
+        if (raw) {
+            System.out.println("Using raw packet data without protocol conversion");
+        }
+
+        if (threads > 1) {
+            if (raw) {
+                try (RawReplayInputStream rawIn = inFile.getRawPacketData()) {
+                    processSegmented(rawIn::readPacket, filters, out, meta.getDuration(), threads);
+                }
+            } else {
+                try (ReplayInputStream replayIn = inFile.getPacketData(PacketTypeRegistry.get(inputVersion, State.LOGIN))) {
+                    processSegmented(replayIn::readPacket, filters, out, meta.getDuration(), threads);
+                }
+            }
+        } else {
+            if (raw) {
+                try (RawReplayInputStream rawIn = inFile.getRawPacketData()) {
+                    process(rawIn.asPacketStream(), filters, out, meta.getDuration());
+                }
+            } else {
+                try (ReplayInputStream replayIn = inFile.getPacketData(PacketTypeRegistry.get(inputVersion, State.LOGIN))) {
+                    process(replayIn.asPacketStream(), filters, out, meta.getDuration());
+                }
+            }
+        }
 
-        // Process stream
+        in.close();
+
+        System.out.println("Done after " + (System.nanoTime() - start) + "ns");
+    }
+
+    private void process(PacketStream stream, List<PacketStream.FilterInfo> filters, ReplayOutputStream out,
+                         long duration) throws IOException {
         stream.start();
 
-        stream.addFilter(new ProgressFilter(meta.getDuration()));
+        stream.addFilter(new ProgressFilter(duration));
         for (PacketStream.FilterInfo info : filters) {
             stream.addFilter(info.getFilter(), info.getFrom(), info.getTo());
         }
@@ -125,13 +174,40 @@ public class StreamLauncher {
             while (stream.next() != null);
             stream.end();
         }
+    }
 
-        in.close();
+    private void processSegmented(IOSupplier<PacketData> in, List<PacketStream.FilterInfo> filters,
+                                  ReplayOutputStream out, long duration, int threads) throws IOException {
+        System.out.println("Filtering segments of the replay on " + threads + " threads");
 
-        System.out.println("Done after " + (System.nanoTime() - start) + "ns");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Progress is reported as packets are read, the ProgressFilter cannot be used since it is not segment-safe
+            ProgressFilter progress = new ProgressFilter(duration);
+            progress.onStart(null);
+            new SegmentedPacketProcessor(executor, threads, SEGMENT_SIZE).process(() -> {
+                PacketData data = in.get();
+                if (data != null) {
+                    progress.onPacket(null, data);
+                }
+                return data;
+            }, filters, data -> {
+                if (out != null) {
+                    out.write(data); // releases the packet
+                } else {
+                    data.release();
+                }
+            });
+            progress.onEnd(null, duration);
+        } finally {
+            executor.shutdown();
+        }
+        if (out != null) {
+            out.close();
+        }
     }
 
-    private long timeStampToMillis(String string) {
+    static long timeStampToMillis(String string) {
         if (string.length() == 0) {
             return -1;
         }
@@ -229,6 +229,58 @@ public class Packet {
             }
         }
 
+        /**
+         * Skips over an NBT tag (as read by {@link #readNBT()}) without decoding it.
+         */
+        public void skipNBT() throws IOException {
+            if (packet.atLeast(ProtocolVersion.v1_8)) {
+                byte type = readByte();
+                if (type == 0) {
+                    return;
+                }
+                if (packet.olderThan(ProtocolVersion.v1_20_2)) {
+                    buf.skipBytes(readUnsignedShort()); // name of root tag
+                }
+                skipNBTPayload(type);
+            } else {
+                short length = readShort();
+                if (length > 0) {
+                    buf.skipBytes(length);
+                }
+            }
+        }
+
+        private void skipNBTPayload(int type) throws IOException {
+            switch (type) {
+                case 1: buf.skipBytes(1); break; // byte
+                case 2: buf.skipBytes(2); break; // short
+                case 3: buf.skipBytes(4); break; // int
+                case 4: buf.skipBytes(8); break; // long
+                case 5: buf.skipBytes(4); break; // float
+                case 6: buf.skipBytes(8); break; // double
+                case 7: buf.skipBytes(readInt()); break; // byte array
+                case 8: buf.skipBytes(readUnsignedShort()); break; // string
+                case 9: { // list
+                    int elementType = readByte();
+                    for (int i = readInt(); i > 0; i--) {
+                        skipNBTPayload(elementType);
+                    }
+                    break;
+                }
+                case 10: { // compound
+                    int entryType;
+                    while ((entryType = readByte()) != 0) {
+                        buf.skipBytes(readUnsignedShort()); // name
+                        skipNBTPayload(entryType);
+                    }
+                    break;
+                }
+                case 11: buf.skipBytes(readInt() * 4); break; // int array
+                case 12: buf.skipBytes(readInt() * 8); break; // long array
+                default: throw new IOException("Unknown NBT tag type: " + type);
+            }
+        }
+
         public BitSet readBitSet() throws IOException {
             return readBitSet(packet.registry, this);
         }
@@ -132,6 +132,50 @@ public class PacketBlockChange {
         }
     }
 
+    /**
+     * Writes a multi block change packet.
+     * All changes must be within the same chunk, or, for 1.16.2+, within the same chunk section.
+     */
+    public static Packet writeBulk(PacketTypeRegistry registry, List<PacketBlockChange> changes) throws IOException {
+        IPosition first = changes.get(0).pos;
+        int chunkX = first.getX() >> 4;
+        int chunkY = first.getY() >> 4;
+        int chunkZ = first.getZ() >> 4;
+        Packet packet = new Packet(registry, PacketType.MultiBlockChange);
+        try (Packet.Writer out = packet.overwrite()) {
+            if (packet.atLeast(ProtocolVersion.v1_16_2)) {
+                out.writeLong(((long) chunkX & 0x3fffff) << 42 | ((long) chunkZ & 0x3fffff) << 20 | ((long) chunkY & 0xfffff));
+                if (packet.olderThan(ProtocolVersion.v1_20)) {
+                    out.writeBoolean(false); // skip light updates
+                }
+                out.writeVarInt(changes.size());
+                for (PacketBlockChange change : changes) {
+                    IPosition pos = change.pos;
+                    out.writeVarLong((long) change.id << 12 | (pos.getX() & 15) << 8 | (pos.getZ() & 15) << 4 | (pos.getY() & 15));
+                }
+            } else {
+                out.writeInt(chunkX);
+                out.writeInt(chunkZ);
+                if (packet.atLeast(ProtocolVersion.v1_8)) {
+                    out.writeVarInt(changes.size());
+                } else {
+                    out.writeShort(changes.size());
+                    out.writeInt(changes.size() * 4);
+                }
+                for (PacketBlockChange change : changes) {
+                    IPosition pos = change.pos;
+                    out.writeShort((pos.getX() & 15) << 12 | (pos.getZ() & 15) << 8 | (pos.getY() & 255));
+                    if (packet.atLeast(ProtocolVersion.v1_8)) {
+                        out.writeVarInt(change.id);
+                    } else {
+                        out.writeShort(change.id);
+                    }
+                }
+            }
+        }
+        return packet;
+    }
+
     public static List<PacketBlockChange> readSingleOrBulk(Packet packet) throws IOException {
         if (packet.getType() == PacketType.BlockChange) {
             return Collections.singletonList(read(packet));
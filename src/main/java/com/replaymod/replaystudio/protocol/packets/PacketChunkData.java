@@ -35,9 +35,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -56,15 +58,33 @@ public class PacketChunkData {
                 if (packet.getType() == PacketType.UnloadChunk) {
                     chunkData.readUnload(packet, reader);
                 } else {
-                    chunkData.readLoad(packet, reader, sections);
+                    chunkData.readLoad(packet, reader, sections, false);
                 }
             } else {
-                chunkData.readLoad(packet, reader, sections);
+                chunkData.readLoad(packet, reader, sections, false);
             }
         }
         return chunkData;
     }
 
+    /**
+     * Like {@link #read(Packet, int)} but only reads what is required to know the block states of the chunk, skipping
+     * over heightmaps, biomes, tile entities and light data instead of decoding them.
+     * The resulting {@link Column} can therefore not be written back into a packet. It is intended for cases where the
+     * original packet is kept around anyway and only the blocks are of interest.
+     * Prior to 1.9, this is equivalent to {@link #read(Packet, int)}.
+     */
+    public static PacketChunkData readBlocksOnly(Packet packet, int sections) throws IOException {
+        if (packet.olderThan(ProtocolVersion.v1_9) || packet.getType() == PacketType.UnloadChunk) {
+            return read(packet, sections);
+        }
+        PacketChunkData chunkData = new PacketChunkData();
+        try (Packet.Reader reader = packet.reader()) {
+            chunkData.readLoad(packet, reader, sections, true);
+        }
+        return chunkData;
+    }
+
     public static PacketChunkData readUnload(Packet packet) throws IOException {
         PacketChunkData chunkData = new PacketChunkData();
         try (Packet.Reader reader = packet.reader()) {
@@ -139,7 +159,7 @@ public class PacketChunkData {
         for (int column = 0; column < columns; column++) {
             byte[] buf = new byte[lengths[column]];
             in.readBytes(buf);
-            result.add(readColumn(packet, buf, xs[column], zs[column], true, skylight, masks[column], new BitSet(), null, null, false));
+            result.add(readColumn(packet, buf, xs[column], zs[column], true, skylight, masks[column], new BitSet(), null, null, false, false));
         }
         return result;
     }
@@ -200,7 +220,7 @@ public class PacketChunkData {
             byte[] buf = new byte[length];
             System.arraycopy(inflated, pos, buf, 0, length);
             // Read data into chunks and biome data.
-            result.add(readColumn(packet, buf, x, z, true, skylight, chunkMask, extendedChunkMask, null, null, false));
+            result.add(readColumn(packet, buf, x, z, true, skylight, chunkMask, extendedChunkMask, null, null, false, false));
             pos += length;
         }
 
@@ -271,7 +291,7 @@ public class PacketChunkData {
         }
     }
 
-    private void readLoad(Packet packet, Packet.Reader in, int sections) throws IOException {
+    private void readLoad(Packet packet, Packet.Reader in, int sections, boolean blocksOnly) throws IOException {
         int x = in.readInt();
         int z = in.readInt();
         boolean fullChunk;
@@ -304,10 +324,22 @@ public class PacketChunkData {
         }
         Heightmaps heightmaps = null;
         if (packet.atLeast(ProtocolVersion.v1_14)) {
-            heightmaps = new Heightmaps(packet, in);
+            if (blocksOnly) {
+                Heightmaps.skip(packet, in);
+            } else {
+                heightmaps = new Heightmaps(packet, in);
+            }
         }
         int[] biomes = null;
-        if (packet.atLeast(ProtocolVersion.v1_15) && packet.olderThan(ProtocolVersion.v1_18) && fullChunk) {
+        if (packet.atLeast(ProtocolVersion.v1_15) && packet.olderThan(ProtocolVersion.v1_18) && fullChunk && blocksOnly) {
+            if (packet.atLeast(ProtocolVersion.v1_16_2)) {
+                for (int i = in.readVarInt(); i > 0; i--) {
+                    in.readVarInt();
+                }
+            } else {
+                in.asBuf().skipBytes(1024 * 4);
+            }
+        } else if (packet.atLeast(ProtocolVersion.v1_15) && packet.olderThan(ProtocolVersion.v1_18) && fullChunk) {
             if (packet.atLeast(ProtocolVersion.v1_16_2)) {
                 biomes = new int[in.readVarInt()];
                 for (int i = 0; i < biomes.length; i++) {
@@ -340,7 +372,14 @@ public class PacketChunkData {
                 inflater.end();
             }
         }
-        this.column = readColumn(packet, data, x, z, fullChunk, false, chunkMask, extendedChunkMask, heightmaps, biomes, useExistingLightData);
+        this.column = readColumn(packet, data, x, z, fullChunk, false, chunkMask, extendedChunkMask, heightmaps, biomes, useExistingLightData, blocksOnly);
+
+        if (blocksOnly) {
+            // Everything past this point is neither required for blocks nor for determining whether the chunk is full
+            this.column.blocksOnly = true;
+            this.column.blocksOnlyFull = fullChunk;
+            return;
+        }
 
         if (packet.atLeast(ProtocolVersion.v1_9_3)) {
             TileEntity[] tileEntities = new TileEntity[in.readVarInt()];
@@ -362,6 +401,9 @@ public class PacketChunkData {
     }
 
     private void writeLoad(Packet packet, Packet.Writer out) throws IOException {
+        if (this.column.blocksOnly) {
+            throw new IllegalStateException("Cannot write a column which was read with readBlocksOnly.");
+        }
         ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
         NetOutput netOut = new StreamNetOutput(byteOut);
         Pair<BitSet, BitSet> masks = writeColumn(packet, netOut, this.column, this.column.isFull());
@@ -426,13 +468,13 @@ public class PacketChunkData {
         }
     }
 
-    private static Column readColumn(Packet packet, byte[] data, int x, int z, boolean fullChunk, boolean hasSkylight, BitSet mask, BitSet extendedMask, Heightmaps heightmaps, int[] biomes, boolean useExistingLightData) throws IOException {
+    private static Column readColumn(Packet packet, byte[] data, int x, int z, boolean fullChunk, boolean hasSkylight, BitSet mask, BitSet extendedMask, Heightmaps heightmaps, int[] biomes, boolean useExistingLightData, boolean blocksOnly) throws IOException {
         NetInput in = new StreamNetInput(new ByteArrayInputStream(data));
         if (packet.atLeast(ProtocolVersion.v1_17)) {
             Chunk[] chunks = new Chunk[mask.length()];
             for (int index = 0; index < chunks.length; index++) {
                 if (mask.get(index)) {
-                    chunks[index] = new Chunk(packet, in);
+                    chunks[index] = new Chunk(packet, in, blocksOnly);
                 }
             }
             return new Column(x, z, chunks, null, null, heightmaps, biomes, useExistingLightData, null);
@@ -504,7 +546,7 @@ public class PacketChunkData {
 
         // Unfortunately, this is needed to detect whether the chunks contain skylight or not.
         if((in.available() > 0 || ex != null) && !hasSkylight) {
-            return readColumn(packet, data, x, z, fullChunk, true, mask, extendedMask, heightmaps, biomes, useExistingLightData);
+            return readColumn(packet, data, x, z, fullChunk, true, mask, extendedMask, heightmaps, biomes, useExistingLightData, blocksOnly);
         } else if(ex != null) {
             throw new IOException("Failed to read chunk data.", ex);
         }
@@ -577,6 +619,8 @@ public class PacketChunkData {
         public int[] biomes; // 1.15+ pre 1.18
         public boolean useExistingLightData; // 1.16+
         public PacketUpdateLight.Data lightData; // 1.18+
+        private boolean blocksOnly; // see readBlocksOnly
+        private boolean blocksOnlyFull;
 
         public Column(int x, int z, Chunk[] chunks, byte[] biomeData, TileEntity[] tileEntities, Heightmaps heightmaps, int[] biomes, boolean useExistingLightData, PacketUpdateLight.Data lightData) {
             this.x = x;
@@ -590,7 +634,17 @@ public class PacketChunkData {
             this.lightData = lightData;
         }
 
+        /**
+         * Whether this column was read via {@link #readBlocksOnly(Packet, int)} and therefore only contains block data.
+         */
+        public boolean isBlocksOnly() {
+            return blocksOnly;
+        }
+
         public boolean isFull() {
+            if (blocksOnly) {
+                return blocksOnlyFull;
+            }
             return this.biomeData != null || this.biomes != null || (this.lightData != null && this.tileEntities != null);
         }
 
@@ -646,6 +700,17 @@ public class PacketChunkData {
             }
         }
 
+        static void skip(Packet packet, Packet.Reader in) throws IOException {
+            if (packet.atLeast(ProtocolVersion.v1_21_5)) {
+                for (int i = in.readVarInt(); i > 0; i--) {
+                    in.readVarInt(); // type
+                    in.asBuf().skipBytes(in.readVarInt() * 8);
+                }
+            } else {
+                in.skipNBT();
+            }
+        }
+
         public void write(Packet packet, Packet.Writer out) throws IOException {
             if (packet.atLeast(ProtocolVersion.v1_21_5)) {
                 out.writeList(list, heightmap -> {
@@ -710,10 +775,18 @@ public class PacketChunkData {
 
         // 1.9+
         Chunk(Packet packet, NetInput in) throws IOException {
+            this(packet, in, false);
+        }
+
+        // 1.9+
+        Chunk(Packet packet, NetInput in, boolean blocksOnly) throws IOException {
             this.blockCount = packet.atLeast(ProtocolVersion.v1_14) ? in.readShort() : 0;
             this.fluidCount = packet.atLeast(ProtocolVersion.v26_1) ? in.readShort() : 0;
             this.blocks = new PalettedStorage(PaletteType.BLOCKS, packet, in);
-            if (packet.atLeast(ProtocolVersion.v1_18)) {
+            if (packet.atLeast(ProtocolVersion.v1_18) && blocksOnly) {
+                PalettedStorage.skip(PaletteType.BIOMES, packet, in);
+                this.biomes = null;
+            } else if (packet.atLeast(ProtocolVersion.v1_18)) {
                 this.biomes = new PalettedStorage(PaletteType.BIOMES, packet, in);
             } else {
                 this.biomes = null;
@@ -819,6 +892,32 @@ public class PacketChunkData {
             this.storage = FlexibleStorage.from(registry, bitsPerEntry, type.size(), data);
         }
 
+        // 1.9+, mirrors the reading constructor
+        static void skip(PaletteType type, Packet packet, NetInput in) throws IOException {
+            int bitsPerEntry = in.readUnsignedByte();
+            int stateCount;
+            if (bitsPerEntry > type.highestBitsPerValue() && packet.atLeast(ProtocolVersion.v1_13)) {
+                stateCount = 0;
+            } else if (bitsPerEntry == 0 && packet.atLeast(ProtocolVersion.v1_18)) {
+                stateCount = 1;
+            } else {
+                stateCount = in.readVarInt();
+            }
+            for (int i = 0; i < stateCount; i++) {
+                in.readVarInt();
+            }
+
+            int longs;
+            if (packet.atLeast(ProtocolVersion.v1_21_5)) {
+                longs = PaddedFlexibleStorage.longsForEntries(bitsPerEntry, type.size());
+            } else {
+                longs = in.readVarInt();
+            }
+            for (int i = 0; i < longs; i++) {
+                in.readLong();
+            }
+        }
+
         // 1.9+
         void write(Packet packet, NetOutput out) throws IOException {
             out.writeByte(this.bitsPerEntry);
@@ -849,13 +948,95 @@ public class PacketChunkData {
          * Only 1.8+
          */
         public int get(int x, int y, int z) {
+            return get(index(x, y, z));
+        }
+
+        private int get(int index) {
             if (this.bitsPerEntry == 0) {
                 return this.states.get(0);
             }
-            int id = this.storage.get(index(x, y, z));
+            return stateForId(this.storage.get(index));
+        }
+
+        private int stateForId(int id) {
             return this.bitsPerEntry <= type.highestBitsPerValue() ? (id >= 0 && id < this.states.size() ? this.states.get(id) : 0) : id;
         }
 
+        /**
+         * Calls the given consumer for every entry which differs between this storage and the given one.
+         * If both use the same palette (the common case for sections which only had a few blocks changed), only the
+         * entries in words of the backing array which actually differ are decoded and compared.
+         * Only 1.8+
+         *
+         * @param to The storage to compare against, must be of the same type
+         * @param consumer Called with the index ({@code y << 8 | z << 4 | x} for blocks) as well as the state in this
+         *                 and in the given storage, in ascending index order
+         */
+        public void diff(PalettedStorage to, DiffConsumer consumer) {
+            if (this.type != to.type) {
+                throw new IllegalArgumentException("Cannot diff " + this.type + " with " + to.type);
+            }
+
+            boolean samePalette = this.bitsPerEntry == to.bitsPerEntry
+                    && (this.bitsPerEntry > type.highestBitsPerValue() || Objects.equals(this.states, to.states));
+            if (samePalette && this.bitsPerEntry == 0) {
+                return; // both contain just a single, identical state
+            }
+            if (samePalette && this.storage != null && to.storage != null && this.storage.getClass() == to.storage.getClass()) {
+                long[] fromData = this.storage.data;
+                long[] toData = to.storage.data;
+                if (fromData.length == toData.length) {
+                    if (Arrays.equals(fromData, toData)) {
+                        return;
+                    }
+                    diffWords(to, consumer);
+                    return;
+                }
+            }
+
+            // Different palettes, need to compare the actual states
+            for (int index = 0; index < type.size(); index++) {
+                int fromState = this.get(index);
+                int toState = to.get(index);
+                if (fromState != toState) {
+                    consumer.accept(index, fromState, toState);
+                }
+            }
+        }
+
+        private void diffWords(PalettedStorage to, DiffConsumer consumer) {
+            FlexibleStorage fromStorage = this.storage;
+            FlexibleStorage toStorage = to.storage;
+            long[] fromData = fromStorage.data;
+            long[] toData = toStorage.data;
+            int bits = fromStorage.bitsPerEntry;
+            int entries = Math.min(fromStorage.entries, toStorage.entries);
+            boolean padded = fromStorage instanceof PaddedFlexibleStorage;
+            int entriesPerLong = padded ? ((PaddedFlexibleStorage) fromStorage).entriesPerLong : 0;
+            int nextIndex = 0; // entries may span two words, we must not report those twice
+            for (int word = 0; word < fromData.length; word++) {
+                if (fromData[word] == toData[word]) {
+                    continue;
+                }
+                int firstIndex, lastIndex;
+                if (padded) {
+                    firstIndex = word * entriesPerLong;
+                    lastIndex = firstIndex + entriesPerLong - 1;
+                } else {
+                    firstIndex = word * 64 / bits;
+                    lastIndex = ((word + 1) * 64 - 1) / bits;
+                }
+                for (int index = Math.max(firstIndex, nextIndex); index <= lastIndex && index < entries; index++) {
+                    int fromId = fromStorage.get(index);
+                    int toId = toStorage.get(index);
+                    if (fromId != toId) {
+                        consumer.accept(index, this.stateForId(fromId), to.stateForId(toId));
+                    }
+                }
+                nextIndex = lastIndex + 1;
+            }
+        }
+
         /**
          * Only 1.8+
          */
@@ -933,6 +1114,10 @@ public class PacketChunkData {
         public PalettedStorage copy() {
             return new PalettedStorage(this);
         }
+
+        public interface DiffConsumer {
+            void accept(int index, int fromState, int toState);
+        }
     }
 
     private static abstract class FlexibleStorage {
@@ -153,6 +153,24 @@ public class PacketPlayerListEntry {
         return entry;
     }
 
+    /**
+     * Returns a copy of the given entry with all mutable state replaced at once.
+     * Only its identity (uuid, name and properties) is taken from the given entry.
+     */
+    public static PacketPlayerListEntry update(PacketPlayerListEntry entry, StringOrNbtText displayName, int gamemode,
+                                               boolean listed, int latency, int listOrder, boolean showHat,
+                                               SigData sigData) {
+        entry = new PacketPlayerListEntry(entry);
+        entry.displayName = displayName;
+        entry.gamemode = gamemode;
+        entry.listed = listed;
+        entry.latency = latency;
+        entry.listOrder = listOrder;
+        entry.showHat = showHat;
+        entry.sigData = sigData;
+        return entry;
+    }
+
     public static Set<Action> getActions(Packet packet) throws IOException {
         try (Packet.Reader in = packet.reader()) {
             if (packet.atLeast(ProtocolVersion.v1_19_3)) {
@@ -265,7 +283,7 @@ public class PacketPlayerListEntry {
 
     private static Packet write_1_8(PacketTypeRegistry registry, Set<Action> actions, List<PacketPlayerListEntry> entries) throws IOException {
         if (registry.atLeast(ProtocolVersion.v1_19_3) && actions.contains(Action.REMOVE)) {
-            Packet packet = new Packet(registry, PacketType.PlayerListEntry);
+            Packet packet = new Packet(registry, PacketType.PlayerListEntryRemove);
             try (Packet.Writer out = packet.overwrite()) {
                 out.writeList(entries, entry -> out.writeUUID(entry.uuid));
             }
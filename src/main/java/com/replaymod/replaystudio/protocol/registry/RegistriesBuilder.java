@@ -20,7 +20,10 @@
 package com.replaymod.replaystudio.protocol.registry;
 
 import com.github.steveice10.opennbt.tag.builtin.Tag;
+import com.github.steveice10.packetlib.io.NetInput;
+import com.github.steveice10.packetlib.io.NetOutput;
 import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.protocol.data.VersionedIdentifier;
 import com.replaymod.replaystudio.protocol.packets.PacketConfigRegistries;
 import com.replaymod.replaystudio.protocol.packets.PacketConfigSelectKnownPacks;
@@ -29,6 +32,8 @@ import com.replaymod.replaystudio.protocol.packets.PacketEnabledPacksData;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -111,6 +116,51 @@ public class RegistriesBuilder {
         }
     }
 
+    /**
+     * Writes the state of this builder, such that it can be restored via {@link #readState(PacketTypeRegistry, NetInput)}.
+     */
+    public void writeState(PacketTypeRegistry registry, NetOutput out) throws IOException {
+        out.writeBoolean(enabledPacks != null);
+        if (enabledPacks != null) {
+            Packet.Writer.writeList(registry, out, enabledPacks, entry -> entry.write(out));
+        }
+        out.writeBoolean(enabledPacksData != null);
+        if (enabledPacksData != null) {
+            Packet.Writer.writeList(registry, out, new ArrayList<>(enabledPacksData.entrySet()), registryEntry -> {
+                out.writeString(registryEntry.getKey());
+                Packet.Writer.writeList(registry, out, new ArrayList<>(registryEntry.getValue().entrySet()), entry -> {
+                    out.writeString(entry.getKey());
+                    Packet.Writer.writeNBT(registry, out, entry.getValue());
+                });
+            });
+        }
+        out.writeBoolean(registries != null);
+        if (registries != null) {
+            registries.writeInternal(registry, out);
+        }
+    }
+
+    public void readState(PacketTypeRegistry registry, NetInput in) throws IOException {
+        enabledPacks = in.readBoolean() ? Packet.Reader.readList(registry, in, () -> VersionedIdentifier.read(in)) : null;
+        if (in.readBoolean()) {
+            enabledPacksData = new HashMap<>();
+            Packet.Reader.readList(registry, in, () -> {
+                String registryName = in.readString();
+                Map<String, Tag> entries = new HashMap<>();
+                Packet.Reader.readList(registry, in, () -> {
+                    String key = in.readString();
+                    entries.put(key, Packet.Reader.readNBT(registry, in));
+                    return null;
+                });
+                enabledPacksData.put(registryName, entries);
+                return null;
+            });
+        } else {
+            enabledPacksData = null;
+        }
+        registries = in.readBoolean() ? Registries.readInternal(registry, in) : null;
+    }
+
     public void copyFrom(RegistriesBuilder other) {
         this.enabledPacks = other.enabledPacks != null ? other.enabledPacks : null;
         this.registries = other.registries != null ? other.registries.copy() : null;
@@ -25,9 +25,13 @@ import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
 import com.github.steveice10.packetlib.io.stream.StreamNetInput;
 import com.github.steveice10.packetlib.io.stream.StreamNetOutput;
+import com.github.steveice10.packetlib.tcp.io.ByteBufNetOutput;
+import com.replaymod.replaystudio.PacketData;
 import com.replaymod.replaystudio.lib.guava.base.Optional;
 import com.replaymod.replaystudio.io.ReplayInputStream;
+import com.replaymod.replaystudio.io.ReplayOutputStream;
 import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
 import com.replaymod.replaystudio.protocol.Packet;
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.rar.analyse.ReplayAnalyzer;
@@ -37,10 +41,26 @@ import com.replaymod.replaystudio.rar.state.Replay;
 import com.replaymod.replaystudio.replay.ReplayFile;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -60,11 +80,40 @@ import java.util.logging.Logger;
  * maintenance work in the future.
  */
 public abstract class RandomAccessReplay {
-    private static final String CACHE_ENTRY = "quickModeCache.bin";
-    private static final String CACHE_INDEX_ENTRY = "quickModeCacheIndex.bin";
-    private static final int CACHE_VERSION = 10;
+    // Caches are specific to the protocol version they were created for, so we keep one per version. That way opening
+    // the same replay from different versions of the game does not require re-analysing it every time.
+    // A single cache cannot be shared between versions: everything in it (packets, block state ids, entity metadata)
+    // is stored already converted to the version it was created for, and that conversion depends on the preceding
+    // packets, so it cannot be redone for individual packets at seek time.
+    // To bound the size of the cache, only the caches of the MAX_CACHED_VERSIONS most recently analysed versions are
+    // kept, the protocol versions are listed (most recent first) in the CACHE_VERSIONS_ENTRY.
+    private static final String CACHE_ENTRY_PREFIX = "quickModeCache-";
+    private static final String CACHE_INDEX_ENTRY_PREFIX = "quickModeCacheIndex-";
+    private static final String CACHE_VERSIONS_ENTRY = "quickModeCacheVersions.txt";
+    private static final int MAX_CACHED_VERSIONS = 3;
+    // The index of a cache is only written once analysis is complete. If analysis is cancelled, the partially written
+    // cache is kept along with a checkpoint from which the analysis can be resumed (see `readCheckpoint`).
+    private static final String CHECKPOINT_ENTRY_PREFIX = "quickModeCheckpoint-";
+    /**
+     * Minimum time (in milliseconds) between two checkpoints of an analysis, so replays which switch worlds very
+     * frequently do not spend most of their time writing checkpoints.
+     */
+    private static final long CHECKPOINT_INTERVAL = 10_000;
+    // Entries used before caches were keyed by protocol version
+    private static final String LEGACY_CACHE_ENTRY = "quickModeCache.bin";
+    private static final String LEGACY_CACHE_INDEX_ENTRY = "quickModeCacheIndex.bin";
+    private static final int CACHE_VERSION = 13;
     private static final Logger LOGGER = Logger.getLogger(RandomAccessReplay.class.getName());
 
+    /**
+     * How far ahead (in replay time) to prefetch, relative to the current seek velocity (replay time per real time).
+     * I.e. at a value of 1000, we prefetch whatever the playhead will reach within one second if it keeps moving at
+     * its current speed.
+     */
+    private static final int PREFETCH_LOOKAHEAD = 1000;
+    private static final int MIN_PREFETCH_WINDOW = 1000;
+    private static final int MAX_PREFETCH_WINDOW = 30_000;
+
     private final ReplayFile replayFile;
     private final PacketTypeRegistry registry;
 
@@ -73,35 +122,59 @@ public abstract class RandomAccessReplay {
     private Replay state;
     private ReadableCache cache;
 
+    private Executor prefetchExecutor;
+    private SeekMetrics seekMetrics;
+    private boolean interpolateEntities;
+    private RegionOfInterest regionOfInterest;
+    private long lastSeekNanos;
+
     public RandomAccessReplay(ReplayFile replayFile, PacketTypeRegistry registry) {
         this.replayFile = replayFile;
         this.registry = registry.withState(State.PLAY);
     }
 
+    /**
+     * Called for each packet produced by seeking. Ownership of the packet is transferred to the implementation, which
+     * must release it once it is done with it (packets read from the cache live in pooled buffers).
+     */
     protected abstract void dispatch(Packet packet);
 
     public void load(Consumer<Double> progress) throws IOException {
-        if (!tryLoadFromCache(progress)) {
+        load(progress, () -> false);
+    }
+
+    /**
+     * Loads the replay, analysing it first if there is no up-to-date cache.
+     *
+     * @param cancelled Polled regularly, once it returns {@code true}, loading is aborted by throwing a
+     *                  {@link CancellationException}. If the replay was being analysed at the time, the next call
+     *                  resumes the analysis from its last checkpoint (taken whenever the replay switches worlds, but
+     *                  at most every ten seconds) rather than starting from scratch.
+     */
+    public void load(Consumer<Double> progress, BooleanSupplier cancelled) throws IOException {
+        if (!tryLoadFromCache(progress, cancelled)) {
             double progressSplit = 0.9; // 90% of progress time for analysing, 10% for loading
-            analyseReplay(d -> progress.accept(d * progressSplit));
-            tryLoadFromCache(d -> progress.accept(d * (1 - progressSplit) + progressSplit));
+            analyseReplay(d -> progress.accept(d * progressSplit), cancelled);
+            tryLoadFromCache(d -> progress.accept(d * (1 - progressSplit) + progressSplit), cancelled);
         }
     }
 
-    private boolean tryLoadFromCache(Consumer<Double> progress) throws IOException {
+    private boolean tryLoadFromCache(Consumer<Double> progress, BooleanSupplier cancelled) throws IOException {
         release();
 
-        Optional<InputStream> cacheIndexOpt = replayFile.getCache(CACHE_INDEX_ENTRY);
+        Optional<InputStream> cacheIndexOpt = replayFile.getCache(cacheIndexEntry(registry));
         if (!cacheIndexOpt.isPresent()) return false;
         try (InputStream indexIn = cacheIndexOpt.get()) {
-            Optional<InputStream> cacheOpt = replayFile.getCache(CACHE_ENTRY);
+            Optional<InputStream> cacheOpt = replayFile.getCache(cacheEntry(registry));
             if (!cacheOpt.isPresent()) return false;
             try (InputStream cacheIn = cacheOpt.get()) {
-                Pair<Replay, ReadableCache> result = loadFromCache(cacheIn, indexIn, progress);
+                Pair<Replay, ReadableCache> result = loadFromCache(cacheIn, indexIn, progress, cancelled);
                 if (result == null) return false;
                 Replay replay = result.getLeft();
                 ReadableCache cache = result.getRight();
                 replay.load(Packet::release, cache);
+                replay.setInterpolateEntities(interpolateEntities);
+                replay.setRegionOfInterest(Packet::release, regionOfInterest);
                 this.state = replay;
                 this.cache = cache;
                 return true;
@@ -112,7 +185,7 @@ public abstract class RandomAccessReplay {
         }
     }
 
-    private Pair<Replay, ReadableCache> loadFromCache(InputStream rawCacheIn, InputStream rawIndexIn, Consumer<Double> progress) throws IOException {
+    private Pair<Replay, ReadableCache> loadFromCache(InputStream rawCacheIn, InputStream rawIndexIn, Consumer<Double> progress, BooleanSupplier cancelled) throws IOException {
         long sysTimeStart = System.currentTimeMillis();
 
         NetInput cacheIn = new StreamNetInput(rawCacheIn);
@@ -125,42 +198,300 @@ public abstract class RandomAccessReplay {
         Replay replay = new Replay(registry, in);
 
         int size = in.readVarInt();
+        byte[] dictionary = in.readBytes(in.readVarInt());
         LOGGER.info("Creating quick mode buffer of size: " + size / 1024 + "KB");
         ByteBuf buf = Unpooled.buffer(size);
         int read = 0;
         while (true) {
+            if (cancelled.getAsBoolean()) {
+                buf.release();
+                throw new CancellationException("Loading of quick mode cache cancelled");
+            }
             int len = buf.writeBytes(rawCacheIn, Math.min(size - read, 4096));
             if (len <= 0) break;
             read += len;
             progress.accept((double) read / size);
         }
-        ReadableCache cache = new ReadableCache(buf);
+        ReadableCache cache = new ReadableCache(buf, dictionary.length > 0 ? dictionary : null);
 
         LOGGER.info("Loaded quick replay from cache in " + (System.currentTimeMillis() - sysTimeStart) + "ms");
         return Pair.of(replay, cache);
     }
 
-    private void analyseReplay(Consumer<Double> progress) throws IOException {
+    private void analyseReplay(Consumer<Double> progress, BooleanSupplier cancelled) throws IOException {
         double sysTimeStart = System.currentTimeMillis();
+        removeLegacyCache(replayFile);
+        Checkpoint checkpoint = readCheckpoint();
+        boolean complete = false;
+        boolean resumable = false;
+        try {
+            if (checkpoint != null) {
+                try {
+                    doAnalyseReplay(progress, cancelled, checkpoint);
+                    complete = true;
+                } catch (IOException | RuntimeException e) {
+                    if (e instanceof CancellationException) {
+                        throw e;
+                    }
+                    LOGGER.log(Level.WARNING, "Failed to resume analysis from checkpoint, starting over:", e);
+                    replayFile.removeCache(checkpointEntry(registry));
+                }
+            }
+            if (!complete) {
+                doAnalyseReplay(progress, cancelled, null);
+                complete = true;
+            }
+            replayFile.removeCache(checkpointEntry(registry));
+            evictCaches(replayFile, registry);
+        } catch (CancellationException e) {
+            resumable = hasCache(checkpointEntry(registry));
+            throw e;
+        } finally {
+            if (!complete) {
+                replayFile.removeCache(cacheIndexEntry(registry));
+                if (resumable) {
+                    // Keep the partial cache for the checkpoint, but count it towards the cached versions
+                    evictCaches(replayFile, registry);
+                } else {
+                    // Do not leave behind a truncated cache
+                    replayFile.removeCache(cacheEntry(registry));
+                    replayFile.removeCache(checkpointEntry(registry));
+                }
+            }
+        }
+        LOGGER.info("Analysed replay in " + (System.currentTimeMillis() - sysTimeStart) + "ms");
+    }
+
+    /**
+     * @param checkpoint Checkpoint to resume the analysis from, or {@code null} to start from scratch
+     */
+    private void doAnalyseReplay(Consumer<Double> progress, BooleanSupplier cancelled, Checkpoint checkpoint) throws IOException {
+        double duration = replayFile.getMetaData().getDuration();
         try (ReplayInputStream in = replayFile.getPacketData(registry.withLoginSuccess());
-             OutputStream cacheOut = replayFile.writeCache(CACHE_ENTRY);
-             OutputStream cacheIndexOut = replayFile.writeCache(CACHE_INDEX_ENTRY)) {
-            NetOutput out = new StreamNetOutput(cacheOut);
-            out.writeVarInt(CACHE_VERSION);
-            out.writeVarInt(registry.getVersion().getOriginalVersion());
+             OutputStream cacheOut = replayFile.writeCache(cacheEntry(registry));
+             OutputStream cacheIndexOut = replayFile.writeCache(cacheIndexEntry(registry))) {
+            writeCacheHeader(new StreamNetOutput(cacheOut), registry);
             NetOutput indexOut = new StreamNetOutput(cacheIndexOut);
-            indexOut.writeVarInt(CACHE_VERSION);
-            indexOut.writeVarInt(registry.getVersion().getOriginalVersion());
+            writeCacheHeader(indexOut, registry);
 
-            WriteableCache cache = new WriteableCache(cacheOut);
+            WriteableCache cache = checkpoint != null
+                    ? new WriteableCache(cacheOut, checkpoint.cacheData.length)
+                    : new WriteableCache(cacheOut);
+            ReplayAnalyzer analyzer = new ReplayAnalyzer(registry, indexOut, cache);
+
+            int packets = 0;
+            if (checkpoint != null) {
+                cacheOut.write(checkpoint.cacheData);
+                NetInput stateIn = new StreamNetInput(new ByteArrayInputStream(checkpoint.state));
+                cache.readState(stateIn);
+                analyzer.readCheckpoint(stateIn);
+
+                // Conversion of the packets to our version is stateful, so we cannot seek in the input but instead need
+                // to read through all the packets which have already been analysed.
+                for (; packets < checkpoint.packets; packets++) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Replay analysis cancelled");
+                    }
+                    PacketData data = in.readPacket();
+                    if (data == null) {
+                        throw new EOFException("Replay ended before checkpoint at " + checkpoint.packets + " packets");
+                    }
+                    progress.accept(data.getTime() / duration);
+                    data.release();
+                }
+                LOGGER.info("Resuming analysis from checkpoint at " + packets + " packets");
+            }
 
-            double duration = replayFile.getMetaData().getDuration();
-            new ReplayAnalyzer(registry, indexOut, cache)
-                    .analyse(in, time -> progress.accept(time / duration));
+            long[] lastCheckpoint = { System.currentTimeMillis() };
+            analyzer.analyse(in, packets, time -> progress.accept(time / duration), cancelled, totalPackets -> {
+                long now = System.currentTimeMillis();
+                if (now - lastCheckpoint[0] < CHECKPOINT_INTERVAL) {
+                    return;
+                }
+                lastCheckpoint[0] = now;
+                cacheOut.flush();
+                writeCheckpoint(cache, analyzer, totalPackets);
+            });
 
-            indexOut.writeVarInt(cache.index()); // store size of cache
+            writeCacheFooter(indexOut, cache);
+        }
+    }
+
+    /**
+     * Writes a checkpoint from which the current analysis can be resumed.
+     * Only the state of the analysis is stored, the data written to the cache up to this point is later read back from
+     * the partial cache itself.
+     */
+    private void writeCheckpoint(WriteableCache cache, ReplayAnalyzer analyzer, int packets) throws IOException {
+        ByteBuf state = Unpooled.buffer();
+        try (OutputStream out = replayFile.writeCache(checkpointEntry(registry))) {
+            NetOutput stateOut = new ByteBufNetOutput(state);
+            cache.writeState(stateOut);
+            analyzer.writeCheckpoint(stateOut);
+
+            NetOutput netOut = new StreamNetOutput(out);
+            writeCacheHeader(netOut, registry);
+            netOut.writeVarInt(packets);
+            netOut.writeVarInt(cache.index());
+            netOut.writeVarInt(state.readableBytes());
+            state.readBytes(out, state.readableBytes());
+        } finally {
+            state.release();
+        }
+    }
+
+    /**
+     * Reads the checkpoint of a previously cancelled analysis together with the part of the cache which was written up
+     * to it.
+     *
+     * @return The checkpoint or {@code null} if there is none or it is unusable (in which case it is removed)
+     */
+    private Checkpoint readCheckpoint() throws IOException {
+        Checkpoint checkpoint = null;
+        try {
+            checkpoint = doReadCheckpoint();
+        } catch (EOFException e) {
+            LOGGER.log(Level.WARNING, "Discarding incomplete quick mode checkpoint:", e);
+        }
+        if (checkpoint == null) {
+            replayFile.removeCache(checkpointEntry(registry));
+        }
+        return checkpoint;
+    }
+
+    private Checkpoint doReadCheckpoint() throws IOException {
+        int packets;
+        int cacheSize;
+        byte[] state;
+        Optional<InputStream> checkpointOpt = replayFile.getCache(checkpointEntry(registry));
+        if (!checkpointOpt.isPresent()) return null;
+        try (InputStream rawIn = checkpointOpt.get()) {
+            NetInput in = new StreamNetInput(rawIn);
+            if (!readCacheHeader(in, registry)) return null;
+            packets = in.readVarInt();
+            cacheSize = in.readVarInt();
+            state = in.readBytes(in.readVarInt());
+        }
+
+        byte[] cacheData;
+        Optional<InputStream> cacheOpt = replayFile.getCache(cacheEntry(registry));
+        if (!cacheOpt.isPresent()) return null;
+        try (InputStream rawIn = cacheOpt.get()) {
+            NetInput in = new StreamNetInput(rawIn);
+            if (!readCacheHeader(in, registry)) return null;
+            cacheData = in.readBytes(cacheSize);
+        }
+
+        return new Checkpoint(packets, cacheData, state);
+    }
+
+    private static class Checkpoint {
+        /** Amount of packets read from the replay up to the checkpoint. */
+        private final int packets;
+        /** Content of the cache (after its header) up to the checkpoint. */
+        private final byte[] cacheData;
+        /** State of the cache and analyzer at the checkpoint. */
+        private final byte[] state;
+
+        private Checkpoint(int packets, byte[] cacheData, byte[] state) {
+            this.packets = packets;
+            this.cacheData = cacheData;
+            this.state = state;
+        }
+    }
+
+    private boolean hasCache(String entry) throws IOException {
+        Optional<InputStream> in = replayFile.getCache(entry);
+        if (in.isPresent()) {
+            in.get().close();
+            return true;
+        }
+        return false;
+    }
+
+    private static String cacheEntry(PacketTypeRegistry registry) {
+        return cacheEntry(registry.getVersion().getOriginalVersion());
+    }
+
+    private static String cacheEntry(int protocolVersion) {
+        return CACHE_ENTRY_PREFIX + protocolVersion + ".bin";
+    }
+
+    private static String cacheIndexEntry(PacketTypeRegistry registry) {
+        return cacheIndexEntry(registry.getVersion().getOriginalVersion());
+    }
+
+    private static String cacheIndexEntry(int protocolVersion) {
+        return CACHE_INDEX_ENTRY_PREFIX + protocolVersion + ".bin";
+    }
+
+    private static String checkpointEntry(PacketTypeRegistry registry) {
+        return checkpointEntry(registry.getVersion().getOriginalVersion());
+    }
+
+    private static String checkpointEntry(int protocolVersion) {
+        return CHECKPOINT_ENTRY_PREFIX + protocolVersion + ".bin";
+    }
+
+    /**
+     * Marks the cache of the given version as the most recently written one and removes the caches of all versions
+     * beyond the {@link #MAX_CACHED_VERSIONS} most recent ones.
+     */
+    private static void evictCaches(ReplayFile replayFile, PacketTypeRegistry registry) throws IOException {
+        List<Integer> versions = new ArrayList<>();
+        versions.add(registry.getVersion().getOriginalVersion());
+        Optional<InputStream> in = replayFile.getCache(CACHE_VERSIONS_ENTRY);
+        if (in.isPresent()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in.get(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        int version = Integer.parseInt(line.trim());
+                        if (!versions.contains(version)) {
+                            versions.add(version);
+                        }
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+        }
+
+        while (versions.size() > MAX_CACHED_VERSIONS) {
+            int version = versions.remove(versions.size() - 1);
+            replayFile.removeCache(cacheEntry(version));
+            replayFile.removeCache(cacheIndexEntry(version));
+            replayFile.removeCache(checkpointEntry(version));
+        }
+
+        try (Writer writer = new OutputStreamWriter(replayFile.writeCache(CACHE_VERSIONS_ENTRY), StandardCharsets.UTF_8)) {
+            for (int version : versions) {
+                writer.write(version + "\n");
+            }
+        }
+    }
+
+    private static void removeLegacyCache(ReplayFile replayFile) throws IOException {
+        replayFile.removeCache(LEGACY_CACHE_ENTRY);
+        replayFile.removeCache(LEGACY_CACHE_INDEX_ENTRY);
+    }
+
+    private static void writeCacheHeader(NetOutput out, PacketTypeRegistry registry) throws IOException {
+        out.writeVarInt(CACHE_VERSION);
+        out.writeVarInt(registry.getVersion().getOriginalVersion());
+    }
+
+    private static boolean readCacheHeader(NetInput in, PacketTypeRegistry registry) throws IOException {
+        return in.readVarInt() == CACHE_VERSION && in.readVarInt() == registry.getVersion().getOriginalVersion();
+    }
+
+    private static void writeCacheFooter(NetOutput indexOut, WriteableCache cache) throws IOException {
+        indexOut.writeVarInt(cache.index()); // store size of cache
+        byte[] dictionary = cache.getDictionary();
+        if (dictionary != null) {
+            indexOut.writeVarInt(dictionary.length);
+            indexOut.writeBytes(dictionary);
+        } else {
+            indexOut.writeVarInt(0);
         }
-        LOGGER.info("Analysed replay in " + (System.currentTimeMillis() - sysTimeStart) + "ms");
     }
 
     public void release() {
@@ -181,12 +512,246 @@ public abstract class RandomAccessReplay {
         currentTimeStamp = -1;
     }
 
+    /**
+     * Enables decoding of upcoming state in the background on the given executor.
+     *
+     * After each seek, the things (entities, chunks, etc.) which the playhead will reach next (based on the direction
+     * and speed of recent seeks) are read from the cache in the background, such that subsequent seeks only need to
+     * send their packets.
+     * Results are discarded if they are not used, so this does not change the result of any seek, only its cost.
+     *
+     * @param executor Executor to decode on, or {@code null} to disable prefetching
+     */
+    public void setPrefetchExecutor(Executor executor) {
+        this.prefetchExecutor = executor;
+    }
+
+    /**
+     * Sets whether entity locations should be interpolated between their recorded locations when seeking, instead of
+     * jumping to the most recent one. Only entities which moved noticeably since the last seek are then updated, so
+     * this is well suited for seeking on every frame (e.g. when rendering).
+     */
+    public void setInterpolateEntities(boolean interpolateEntities) {
+        this.interpolateEntities = interpolateEntities;
+        if (state != null) {
+            state.setInterpolateEntities(interpolateEntities);
+        }
+    }
+
+    /**
+     * Restricts playback to the given region of the world. Chunks and entities entirely outside of it are despawned
+     * and no longer updated, while those which enter it are spawned and brought up to date immediately.
+     * Intended for renders which only look at a specific part of the world, where sending everything else would be a
+     * waste of time.
+     *
+     * @param region The region of interest, or {@code null} to play back everything
+     */
+    public void setRegionOfInterest(RegionOfInterest region) throws IOException {
+        this.regionOfInterest = region;
+        if (state != null) {
+            state.setRegionOfInterest(this::dispatch, region);
+        }
+    }
+
+    /**
+     * Sets the metrics instance which all subsequent seeks are recorded into.
+     *
+     * @param metrics The metrics to record into, or {@code null} to disable recording
+     */
+    public void setSeekMetrics(SeekMetrics metrics) {
+        this.seekMetrics = metrics;
+    }
+
+    public SeekMetrics getSeekMetrics() {
+        return seekMetrics;
+    }
+
     public void seek(int targetTime) throws IOException {
-        if (targetTime > currentTimeStamp) {
-            state.play(this::dispatch, currentTimeStamp, targetTime);
-        } else {
-            state.rewind(this::dispatch, currentTimeStamp, targetTime);
+        int previousTime = currentTimeStamp;
+        SeekMetrics metrics = seekMetrics;
+        PacketSink sink = this::dispatch;
+        if (metrics != null) {
+            metrics.begin(cache);
+            sink = metrics.wrap(sink);
+        }
+        try {
+            if (targetTime > currentTimeStamp) {
+                state.play(sink, currentTimeStamp, targetTime);
+            } else {
+                state.rewind(sink, currentTimeStamp, targetTime);
+            }
+        } finally {
+            if (metrics != null) {
+                metrics.end(cache, previousTime, targetTime);
+            }
         }
         currentTimeStamp = targetTime;
+
+        if (prefetchExecutor != null) {
+            prefetch(previousTime, targetTime);
+        }
+    }
+
+    private void prefetch(int previousTime, int targetTime) throws IOException {
+        long now = System.nanoTime();
+        long realMillis = Math.max(1, (now - lastSeekNanos) / 1_000_000);
+        lastSeekNanos = now;
+        if (previousTime == -1 || targetTime == previousTime) {
+            return; // no idea where we are headed
+        }
+
+        long window = Math.abs((long) (targetTime - previousTime)) * PREFETCH_LOOKAHEAD / realMillis;
+        window = Math.max(MIN_PREFETCH_WINDOW, Math.min(MAX_PREFETCH_WINDOW, window));
+        int prefetchTime = targetTime > previousTime
+                ? (int) Math.min(Integer.MAX_VALUE, targetTime + window)
+                : (int) Math.max(0, targetTime - window);
+        state.prefetch(prefetchExecutor, targetTime, prefetchTime);
+    }
+
+    /**
+     * Builds the quick mode cache while the replay is still being recorded, such that it is available as soon as
+     * recording stops instead of having to analyse the whole replay when it is first opened.
+     *
+     * Should be attached to the {@link ReplayOutputStream} of the replay via
+     * {@link ReplayOutputStream#addListener(ReplayOutputStream.PacketListener)} before any packets are written.
+     * Cache segments are appended to a temporary file as things are committed during recording, and only copied into
+     * the replay file together with the finalized index once this listener is closed. Since writing the recording
+     * invalidates all caches of a replay file, the output stream must be closed before this listener is (which is
+     * what the output stream itself does).
+     *
+     * Packets are analysed on a separate thread, the recording thread only hands them over via a bounded queue (and
+     * only blocks if analysis falls behind by more than a few thousand packets).
+     * Login-phase packets are skipped, such that the analyzer sees the same packets as when analysing on load.
+     *
+     * The cache is built for the protocol version the replay is being recorded in, so it is only used if the replay
+     * is later opened with that same version. Opening it with any other version still analyses it on load.
+     *
+     * If analysis fails for any reason, no cache is written and the replay will instead be analysed when it is loaded.
+     */
+    public static class LiveAnalysis implements ReplayOutputStream.PacketListener {
+        private static final int QUEUE_SIZE = 4096;
+        private static final PacketData END = new PacketData(-1, null);
+
+        private final ReplayFile replayFile;
+        private final PacketTypeRegistry registry;
+        private final Path segmentsFile;
+        private final OutputStream segmentsOut;
+        private final WriteableCache cache;
+        private final ByteBuf index;
+        private final ReplayAnalyzer analyzer;
+        private final BlockingQueue<PacketData> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final Thread worker;
+        private volatile boolean failed;
+        private boolean closed;
+
+        /**
+         * @param replayFile The replay file to which the cache is written once recording is done
+         * @param version The protocol version in which the replay is recorded
+         */
+        public LiveAnalysis(ReplayFile replayFile, ProtocolVersion version) throws IOException {
+            this.replayFile = replayFile;
+            this.registry = PacketTypeRegistry.get(version, State.PLAY);
+            this.segmentsFile = Files.createTempFile("replaystudio", "quickmode");
+            this.segmentsOut = new BufferedOutputStream(Files.newOutputStream(segmentsFile));
+            this.cache = new WriteableCache(segmentsOut);
+            this.index = Unpooled.buffer();
+            this.analyzer = new ReplayAnalyzer(registry, new ByteBufNetOutput(index), cache);
+            this.worker = new Thread(this::run, "replaystudio-live-analysis");
+            this.worker.setDaemon(true);
+            this.worker.start();
+        }
+
+        private void run() {
+            while (true) {
+                PacketData data;
+                try {
+                    data = queue.take();
+                } catch (InterruptedException e) {
+                    continue; // only ever stopped via END, otherwise the recording thread might block forever
+                }
+                if (data == END) {
+                    return;
+                }
+                if (failed) {
+                    data.release();
+                    continue;
+                }
+                try {
+                    analyzer.process(data);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Live quick mode analysis failed, replay will be analysed on load instead:", e);
+                    analyzer.discard();
+                    failed = true;
+                }
+            }
+        }
+
+        @Override
+        public void onPacket(PacketData data) {
+            // The load path starts reading after the login phase, so the analyzer must never see it either
+            if (failed || closed || data.getPacket().getRegistry().getState() == State.LOGIN) {
+                data.release();
+                return;
+            }
+            try {
+                queue.put(data);
+            } catch (InterruptedException e) {
+                data.release();
+                failed = true;
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                if (failed) {
+                    return;
+                }
+                analyzer.finish();
+                segmentsOut.close();
+
+                removeLegacyCache(replayFile);
+                replayFile.removeCache(checkpointEntry(registry)); // belongs to a different cache
+                try (OutputStream cacheOut = replayFile.writeCache(cacheEntry(registry));
+                     OutputStream cacheIndexOut = replayFile.writeCache(cacheIndexEntry(registry))) {
+                    writeCacheHeader(new StreamNetOutput(cacheOut), registry);
+                    Files.copy(segmentsFile, cacheOut);
+
+                    NetOutput indexOut = new StreamNetOutput(cacheIndexOut);
+                    writeCacheHeader(indexOut, registry);
+                    index.readBytes(cacheIndexOut, index.readableBytes());
+                    writeCacheFooter(indexOut, cache);
+                }
+                evictCaches(replayFile, registry);
+            } finally {
+                segmentsOut.close();
+                Files.deleteIfExists(segmentsFile);
+                index.release();
+            }
+        }
     }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.replaymod.replaystudio.rar;
+
+/**
+ * A region of the world, in chunk coordinates, to which quick mode playback can be restricted.
+ * Things (chunks, entities) entirely outside of it are neither loaded nor updated.
+ *
+ * @see RandomAccessReplay#setRegionOfInterest(RegionOfInterest)
+ */
+public final class RegionOfInterest {
+    private final int minX, minZ, maxX, maxZ;
+    // Circle (in chunk coordinates) further limiting the region, only used if radius is not negative
+    private final double centerX, centerZ, radius;
+
+    private RegionOfInterest(int minX, int minZ, int maxX, int maxZ, double centerX, double centerZ, double radius) {
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.radius = radius;
+    }
+
+    /**
+     * Creates a region consisting of all chunks within the given bounds (inclusive).
+     */
+    public static RegionOfInterest chunks(int minX, int minZ, int maxX, int maxZ) {
+        if (minX > maxX || minZ > maxZ) {
+            throw new IllegalArgumentException("Minimum must not be larger than maximum.");
+        }
+        return new RegionOfInterest(minX, minZ, maxX, maxZ, 0, 0, -1);
+    }
+
+    /**
+     * Creates a region consisting of all chunks which are at least partially within the given radius (in blocks)
+     * around the given position (in block coordinates), e.g. the render distance around the camera.
+     */
+    public static RegionOfInterest around(double x, double z, double radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative.");
+        }
+        return new RegionOfInterest(
+                (int) Math.floor((x - radius) / 16),
+                (int) Math.floor((z - radius) / 16),
+                (int) Math.floor((x + radius) / 16),
+                (int) Math.floor((z + radius) / 16),
+                x / 16, z / 16, radius / 16
+        );
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    /**
+     * Returns whether any chunk within the given bounds (inclusive) is part of this region.
+     */
+    public boolean intersects(int minX, int minZ, int maxX, int maxZ) {
+        if (maxX < this.minX || minX > this.maxX || maxZ < this.minZ || minZ > this.maxZ) {
+            return false;
+        }
+        if (radius < 0) {
+            return true;
+        }
+        // Distance from the center to the closest point of the given chunks
+        double dx = centerX - Math.max(minX, Math.min(maxX + 1.0, centerX));
+        double dz = centerZ - Math.max(minZ, Math.min(maxZ + 1.0, centerZ));
+        return dx * dx + dz * dz <= radius * radius;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RegionOfInterest that = (RegionOfInterest) o;
+        return minX == that.minX && minZ == that.minZ && maxX == that.maxX && maxZ == that.maxZ
+                && Double.compare(that.centerX, centerX) == 0
+                && Double.compare(that.centerZ, centerZ) == 0
+                && Double.compare(that.radius, radius) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = minX;
+        result = 31 * result + minZ;
+        result = 31 * result + maxX;
+        result = 31 * result + maxZ;
+        result = 31 * result + Double.hashCode(centerX);
+        result = 31 * result + Double.hashCode(centerZ);
+        result = 31 * result + Double.hashCode(radius);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RegionOfInterest{" + minX + "/" + minZ + " to " + maxX + "/" + maxZ
+                + (radius >= 0 ? ", radius " + radius * 16 + " around " + centerX * 16 + "/" + centerZ * 16 : "") + "}";
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.replaymod.replaystudio.rar;
+
+import com.replaymod.replaystudio.rar.cache.ReadableCache;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Collects timing statistics of {@link RandomAccessReplay#seek} calls, broken down by the kind of container which did
+ * the work, and aggregates them into histograms over the whole session.
+ *
+ * Containers report the work they do via {@link #enter(Container)} and {@link #exit(SeekMetrics)}. Time is attributed
+ * exclusively, i.e. time spent in a nested container (e.g. the blocks of a chunk within {@link Container#TRANSIENT_THINGS})
+ * is only counted towards the inner one. Packets are attributed to whichever container was innermost when they were
+ * emitted.
+ *
+ * Containers of which there are many instances (e.g. the individual {@link Container#PACKETS} trees) may additionally
+ * pass a label via {@link #enter(Container, String)}, in which case their time and packets are also tracked per label.
+ *
+ * Metrics are only recorded on the thread which is currently seeking, so background work (e.g. prefetching) is not
+ * included.
+ */
+public class SeekMetrics {
+    private static final ThreadLocal<SeekMetrics> ACTIVE = new ThreadLocal<>();
+
+    public enum Container {
+        /** Anything not covered by a more specific container. */
+        OTHER,
+        /** World switches (join game, respawn, configuration phase). */
+        WORLDS,
+        /** Spawning and despawning of entities, chunks and weather. */
+        TRANSIENT_THINGS,
+        /** Block changes within chunks. */
+        BLOCKS,
+        /** Entity movement. */
+        LOCATIONS,
+        /** Plain packet state (world time, view distance, tags, etc.). */
+        PACKETS,
+    }
+
+    private static final Container[] CONTAINERS = Container.values();
+
+    private final Listener listener;
+
+    private final Histogram seekHistogram = new Histogram();
+    private final Histogram[] containerHistograms = new Histogram[CONTAINERS.length];
+    private final Map<String, Histogram> labelHistograms = new TreeMap<>();
+    private long totalBytesRead;
+    private long totalPackets;
+
+    // State of the current seek
+    private final long[] nanos = new long[CONTAINERS.length];
+    private final int[] packets = new int[CONTAINERS.length];
+    private final Object2LongOpenHashMap<String> labelNanos = new Object2LongOpenHashMap<>();
+    private final Object2IntOpenHashMap<String> labelPackets = new Object2IntOpenHashMap<>();
+    private Container[] stack = new Container[8];
+    private String[] labelStack = new String[8];
+    private int depth;
+    private long lastNanos;
+    private long startNanos;
+    private long startBytesRead;
+
+    public SeekMetrics() {
+        this(null);
+    }
+
+    /**
+     * @param listener Listener to be called after each seek, may be {@code null}
+     */
+    public SeekMetrics(Listener listener) {
+        this.listener = listener;
+        for (int i = 0; i < containerHistograms.length; i++) {
+            containerHistograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Marks the start of work done by the given container on the current thread.
+     *
+     * @return The active metrics instance to be passed to {@link #exit(SeekMetrics)}, or {@code null} if no metrics are
+     *         being recorded
+     */
+    public static SeekMetrics enter(Container container) {
+        return enter(container, null);
+    }
+
+    /**
+     * Marks the start of work done by the given container on the current thread, additionally attributing it to the
+     * given label.
+     *
+     * @param label Label identifying the specific container instance, may be {@code null}
+     * @return The active metrics instance to be passed to {@link #exit(SeekMetrics)}, or {@code null} if no metrics are
+     *         being recorded
+     */
+    public static SeekMetrics enter(Container container, String label) {
+        SeekMetrics metrics = ACTIVE.get();
+        if (metrics != null) {
+            metrics.push(container, label);
+        }
+        return metrics;
+    }
+
+    /**
+     * Marks the end of work done by the container passed to the matching {@link #enter(Container, String)} call.
+     */
+    public static void exit(SeekMetrics metrics) {
+        if (metrics != null) {
+            metrics.pop();
+        }
+    }
+
+    private void push(Container container, String label) {
+        account(depth - 1);
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            labelStack = Arrays.copyOf(labelStack, depth * 2);
+        }
+        stack[depth] = container;
+        labelStack[depth] = label;
+        depth++;
+    }
+
+    private void pop() {
+        account(--depth);
+    }
+
+    private void account(int level) {
+        long now = System.nanoTime();
+        long delta = now - lastNanos;
+        nanos[stack[level].ordinal()] += delta;
+        String label = labelStack[level];
+        if (label != null) {
+            labelNanos.addTo(label, delta);
+        }
+        lastNanos = now;
+    }
+
+    void begin(ReadableCache cache) {
+        Arrays.fill(nanos, 0);
+        Arrays.fill(packets, 0);
+        labelNanos.clear();
+        labelPackets.clear();
+        stack[0] = Container.OTHER;
+        labelStack[0] = null;
+        depth = 1;
+        startBytesRead = cache.bytesRead();
+        startNanos = lastNanos = System.nanoTime();
+        ACTIVE.set(this);
+    }
+
+    PacketSink wrap(PacketSink sink) {
+        return packet -> {
+            packets[stack[depth - 1].ordinal()]++;
+            String label = labelStack[depth - 1];
+            if (label != null) {
+                labelPackets.addTo(label, 1);
+            }
+            sink.accept(packet);
+        };
+    }
+
+    void end(ReadableCache cache, int currentTime, int targetTime) {
+        ACTIVE.remove();
+        account(depth - 1); // may be nested if there was an exception
+        depth = 0;
+        Arrays.fill(labelStack, null);
+        long totalNanos = lastNanos - startNanos;
+        long bytesRead = cache.bytesRead() - startBytesRead;
+
+        seekHistogram.record(totalNanos);
+        for (int i = 0; i < CONTAINERS.length; i++) {
+            if (nanos[i] > 0 || packets[i] > 0) {
+                containerHistograms[i].record(nanos[i]);
+            }
+            totalPackets += packets[i];
+        }
+        for (Object2LongMap.Entry<String> entry : labelNanos.object2LongEntrySet()) {
+            labelHistograms.computeIfAbsent(entry.getKey(), k -> new Histogram()).record(entry.getLongValue());
+        }
+        totalBytesRead += bytesRead;
+
+        if (listener != null) {
+            listener.onSeek(new Seek(currentTime, targetTime, totalNanos, nanos.clone(), packets.clone(),
+                    new Object2LongOpenHashMap<>(labelNanos), new Object2IntOpenHashMap<>(labelPackets), bytesRead));
+        }
+    }
+
+    /**
+     * Returns the histogram over the total duration of all seeks so far.
+     */
+    public Histogram getSeekHistogram() {
+        return seekHistogram;
+    }
+
+    /**
+     * Returns the histogram over the time spent in the given container, for all seeks in which it did any work.
+     */
+    public Histogram getHistogram(Container container) {
+        return containerHistograms[container.ordinal()];
+    }
+
+    /**
+     * Returns the labels passed to {@link #enter(Container, String)} so far.
+     */
+    public Set<String> getLabels() {
+        return Collections.unmodifiableSet(labelHistograms.keySet());
+    }
+
+    /**
+     * Returns the histogram over the time spent in containers with the given label, for all seeks in which they did
+     * any work, or {@code null} if the label has not been seen yet.
+     */
+    public Histogram getHistogram(String label) {
+        return labelHistograms.get(label);
+    }
+
+    public long getTotalBytesRead() {
+        return totalBytesRead;
+    }
+
+    public long getTotalPackets() {
+        return totalPackets;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SeekMetrics{seeks=").append(seekHistogram);
+        for (Container container : CONTAINERS) {
+            sb.append(", ").append(container).append('=').append(getHistogram(container));
+        }
+        for (Map.Entry<String, Histogram> entry : labelHistograms.entrySet()) {
+            sb.append(", ").append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.append(", bytesRead=").append(totalBytesRead).append(", packets=").append(totalPackets).append('}').toString();
+    }
+
+    public interface Listener {
+        void onSeek(Seek seek);
+    }
+
+    /**
+     * Metrics of a single {@link RandomAccessReplay#seek} call.
+     */
+    public static class Seek {
+        public final int currentTime;
+        public final int targetTime;
+        public final long nanos;
+        private final long[] containerNanos;
+        private final int[] containerPackets;
+        private final Object2LongMap<String> labelNanos;
+        private final Object2IntMap<String> labelPackets;
+        /** Amount of bytes read from the quick mode cache (compressed size). */
+        public final long bytesRead;
+
+        Seek(int currentTime, int targetTime, long nanos, long[] containerNanos, int[] containerPackets,
+             Object2LongMap<String> labelNanos, Object2IntMap<String> labelPackets, long bytesRead) {
+            this.currentTime = currentTime;
+            this.targetTime = targetTime;
+            this.nanos = nanos;
+            this.containerNanos = containerNanos;
+            this.containerPackets = containerPackets;
+            this.labelNanos = labelNanos;
+            this.labelPackets = labelPackets;
+            this.bytesRead = bytesRead;
+        }
+
+        public long getNanos(Container container) {
+            return containerNanos[container.ordinal()];
+        }
+
+        public int getPackets(Container container) {
+            return containerPackets[container.ordinal()];
+        }
+
+        public long getNanos(String label) {
+            return labelNanos.getLong(label);
+        }
+
+        public int getPackets(String label) {
+            return labelPackets.getInt(label);
+        }
+
+        public int getPackets() {
+            int sum = 0;
+            for (int count : containerPackets) {
+                sum += count;
+            }
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Seek{").append(currentTime).append("->").append(targetTime)
+                    .append(", ").append(nanos / 1000).append("us");
+            for (Container container : CONTAINERS) {
+                int i = container.ordinal();
+                if (containerNanos[i] > 0 || containerPackets[i] > 0) {
+                    sb.append(", ").append(container).append('=').append(containerNanos[i] / 1000).append("us/")
+                            .append(containerPackets[i]).append("p");
+                }
+            }
+            for (Object2LongMap.Entry<String> entry : labelNanos.object2LongEntrySet()) {
+                sb.append(", ").append(entry.getKey()).append('=').append(entry.getLongValue() / 1000).append("us/")
+                        .append(labelPackets.getInt(entry.getKey())).append("p");
+            }
+            return sb.append(", ").append(bytesRead).append("B}").toString();
+        }
+    }
+
+    /**
+     * Histogram of durations with power-of-two microsecond buckets.
+     */
+    public static class Histogram {
+        private final long[] buckets = new long[64];
+        private long count;
+        private long sumNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            long micros = nanos / 1000;
+            buckets[64 - Long.numberOfLeadingZeros(micros)]++;
+            count++;
+            sumNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : sumNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * Returns the amount of durations recorded in the given bucket. Bucket 0 contains durations of less than one
+         * microsecond, bucket {@code i} those in {@code [2^(i-1), 2^i)} microseconds.
+         */
+        public long getBucket(int bucket) {
+            return buckets[bucket];
+        }
+
+        /**
+         * Returns an upper bound (in microseconds, with power-of-two precision) of the given percentile.
+         *
+         * @param percentile Percentile between 0 and 1
+         */
+        public long getPercentileMicros(double percentile) {
+            long threshold = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= threshold && seen > 0) {
+                    return i == 0 ? 1 : 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "{n=" + count + ", mean=" + getMeanNanos() / 1000 + "us, p50<=" + getPercentileMicros(0.5)
+                    + "us, p99<=" + getPercentileMicros(0.99) + "us, max=" + maxNanos / 1000 + "us}";
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.rar.analyse;
+
+import com.github.steveice10.packetlib.io.NetInput;
+import com.github.steveice10.packetlib.io.NetOutput;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import com.replaymod.replaystudio.protocol.data.StringOrNbtText;
+import com.replaymod.replaystudio.protocol.packets.PacketPlayerListEntry;
+import com.replaymod.replaystudio.protocol.packets.PacketPlayerListEntry.Action;
+import com.replaymod.replaystudio.util.Utils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Mutable player list state as seen by the client at the current point of the analysis.
+ *
+ * The mutable state of all entries is stored in parallel arrays indexed by slot, so frequent updates (mostly latency)
+ * do not allocate. Entries are keyed by their UUID (1.8+) or their name (1.7).
+ */
+class PlayerList {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final PacketTypeRegistry registry;
+    private final Object2IntOpenHashMap<Object> slots = new Object2IntOpenHashMap<>();
+    private final IntArrayList freeSlots = new IntArrayList();
+    private int nextSlot;
+
+    // The entry as last added, only its identity (uuid, name, properties) is used
+    private PacketPlayerListEntry[] identities = new PacketPlayerListEntry[INITIAL_CAPACITY];
+    private StringOrNbtText[] displayNames = new StringOrNbtText[INITIAL_CAPACITY];
+    private PacketPlayerListEntry.SigData[] sigData = new PacketPlayerListEntry.SigData[INITIAL_CAPACITY];
+    private int[] gamemodes = new int[INITIAL_CAPACITY];
+    private int[] latencies = new int[INITIAL_CAPACITY];
+    private int[] listOrders = new int[INITIAL_CAPACITY];
+    private boolean[] listed = new boolean[INITIAL_CAPACITY];
+    private boolean[] showHat = new boolean[INITIAL_CAPACITY];
+
+    PlayerList(PacketTypeRegistry registry) {
+        this.registry = registry;
+        this.slots.defaultReturnValue(-1);
+    }
+
+    /**
+     * Returns a snapshot of the entry with the given id, or {@code null} if there is no such entry.
+     * @see PacketPlayerListEntry#getId()
+     */
+    PacketPlayerListEntry get(String id) {
+        int slot = slots.getInt(registry.atLeast(ProtocolVersion.v1_8) ? UUID.fromString(id) : id);
+        return slot == -1 ? null : snapshot(slot);
+    }
+
+    /**
+     * Applies the given player list update.
+     *
+     * @return Packets which revert the update when sent in order, or {@code null} if the update is not worth
+     *         recording. Updates which only change the latency of entries are never recorded because they are
+     *         frequent and have little visible effect.
+     */
+    List<Packet> update(Set<Action> actions, List<PacketPlayerListEntry> entries) throws IOException {
+        boolean latencyOnly = actions.size() == 1 && actions.contains(Action.LATENCY);
+        boolean legacy = registry.olderThan(ProtocolVersion.v1_8);
+
+        List<PacketPlayerListEntry> added = new ArrayList<>(0); // reverted by removing them
+        List<PacketPlayerListEntry> replaced = new ArrayList<>(0); // reverted by adding their old state
+        List<PacketPlayerListEntry> updated = new ArrayList<>(0); // reverted by updating with their old state
+        for (PacketPlayerListEntry entry : entries) {
+            Object key = entry.getUuid() != null ? entry.getUuid() : entry.getName();
+            int slot = slots.getInt(key);
+            if (actions.contains(Action.REMOVE)) {
+                if (slot != -1) {
+                    replaced.add(snapshot(slot));
+                    free(key, slot);
+                }
+            } else if (actions.contains(Action.ADD)) {
+                if (slot == -1) {
+                    added.add(entry);
+                    set(allocate(key), entry);
+                } else if (legacy) {
+                    // 1.7 re-sends ADD periodically to update the latency
+                    latencies[slot] = entry.getLatency();
+                } else {
+                    replaced.add(snapshot(slot));
+                    set(slot, entry);
+                }
+            } else if (slot != -1) {
+                if (!latencyOnly) {
+                    updated.add(snapshot(slot));
+                }
+                for (Action action : actions) {
+                    switch (action) {
+                        case CHAT_KEY:
+                            sigData[slot] = entry.getSigData();
+                            break;
+                        case GAMEMODE:
+                            gamemodes[slot] = entry.getGamemode();
+                            break;
+                        case LISTED:
+                            listed[slot] = entry.isListed();
+                            break;
+                        case LATENCY:
+                            latencies[slot] = entry.getLatency();
+                            break;
+                        case DISPLAY_NAME:
+                            displayNames[slot] = entry.getDisplayName();
+                            break;
+                        case LIST_ORDER:
+                            listOrders[slot] = entry.getListOrder();
+                            break;
+                        case SHOW_HAT:
+                            showHat[slot] = entry.getShowHat();
+                            break;
+                    }
+                }
+            }
+        }
+
+        if (added.isEmpty() && replaced.isEmpty() && updated.isEmpty()) {
+            return null;
+        }
+        List<Packet> undo = new ArrayList<>();
+        if (!added.isEmpty()) {
+            undo.addAll(PacketPlayerListEntry.write(registry, EnumSet.of(Action.REMOVE), added));
+        }
+        if (!replaced.isEmpty()) {
+            undo.addAll(PacketPlayerListEntry.write(registry, Action.init(registry), replaced));
+        }
+        if (!updated.isEmpty()) {
+            undo.addAll(PacketPlayerListEntry.write(registry, actions, updated));
+        }
+        return undo;
+    }
+
+    /**
+     * Writes all current entries, such that they can be restored via {@link #read(NetInput)}.
+     */
+    void write(NetOutput out) throws IOException {
+        List<PacketPlayerListEntry> entries = new ArrayList<>(slots.size());
+        for (int slot : slots.values()) {
+            entries.add(snapshot(slot));
+        }
+        List<Packet> packets = entries.isEmpty()
+                ? new ArrayList<>(0)
+                : PacketPlayerListEntry.write(registry, Action.init(registry), entries);
+        try {
+            out.writeVarInt(packets.size());
+            for (Packet packet : packets) {
+                Utils.writeCompressedPacket(out, packet);
+            }
+        } finally {
+            packets.forEach(Packet::release);
+        }
+    }
+
+    /**
+     * Adds the entries written by {@link #write(NetOutput)}.
+     */
+    void read(NetInput in) throws IOException {
+        for (int i = in.readVarInt(); i > 0; i--) {
+            Packet packet = Utils.readCompressedPacket(registry, in);
+            try {
+                List<Packet> undo = update(PacketPlayerListEntry.getActions(packet), PacketPlayerListEntry.read(packet));
+                if (undo != null) {
+                    undo.forEach(Packet::release);
+                }
+            } finally {
+                packet.release();
+            }
+        }
+    }
+
+    private PacketPlayerListEntry snapshot(int slot) {
+        return PacketPlayerListEntry.update(identities[slot], displayNames[slot], gamemodes[slot], listed[slot],
+                latencies[slot], listOrders[slot], showHat[slot], sigData[slot]);
+    }
+
+    private void set(int slot, PacketPlayerListEntry entry) {
+        identities[slot] = entry;
+        displayNames[slot] = entry.getDisplayName();
+        sigData[slot] = entry.getSigData();
+        gamemodes[slot] = entry.getGamemode();
+        latencies[slot] = entry.getLatency();
+        listOrders[slot] = entry.getListOrder();
+        listed[slot] = entry.isListed();
+        showHat[slot] = entry.getShowHat();
+    }
+
+    private int allocate(Object key) {
+        int slot;
+        if (!freeSlots.isEmpty()) {
+            slot = freeSlots.removeInt(freeSlots.size() - 1);
+        } else {
+            slot = nextSlot++;
+            if (slot == identities.length) {
+                int capacity = slot * 2;
+                identities = Arrays.copyOf(identities, capacity);
+                displayNames = Arrays.copyOf(displayNames, capacity);
+                sigData = Arrays.copyOf(sigData, capacity);
+                gamemodes = Arrays.copyOf(gamemodes, capacity);
+                latencies = Arrays.copyOf(latencies, capacity);
+                listOrders = Arrays.copyOf(listOrders, capacity);
+                listed = Arrays.copyOf(listed, capacity);
+                showHat = Arrays.copyOf(showHat, capacity);
+            }
+        }
+        slots.put(key, slot);
+        return slot;
+    }
+
+    private void free(Object key, int slot) {
+        slots.removeInt(key);
+        identities[slot] = null;
+        displayNames[slot] = null;
+        sigData[slot] = null;
+        freeSlots.add(slot);
+    }
+}
@@ -19,6 +19,7 @@
 
 package com.replaymod.replaystudio.rar.analyse;
 
+import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
 import com.replaymod.replaystudio.PacketData;
 import com.replaymod.replaystudio.io.ReplayInputStream;
@@ -35,49 +36,341 @@ import com.replaymod.replaystudio.rar.state.Replay;
 import com.replaymod.replaystudio.rar.state.Weather;
 import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
 import com.replaymod.replaystudio.rar.state.World;
+import com.replaymod.replaystudio.util.IOConsumer;
 import com.replaymod.replaystudio.util.IPosition;
 import com.replaymod.replaystudio.util.Location;
 import com.replaymod.replaystudio.util.PacketUtils;
+import com.replaymod.replaystudio.util.Utils;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.longs.LongSet;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
 import java.util.function.IntConsumer;
 
 import static com.replaymod.replaystudio.protocol.packets.PacketChunkData.Column.longToX;
 import static com.replaymod.replaystudio.protocol.packets.PacketChunkData.Column.longToZ;
 
 public class ReplayAnalyzer {
+    /**
+     * Maximum amount of packets which have been read (and whose chunk data may be decoded in the background) but have
+     * not yet been committed.
+     */
+    private static final int MAX_PENDING_PACKETS = 256;
+
     private final PacketTypeRegistry registry;
     private final NetOutput out;
     private final Replay.Builder replay;
+    private final Executor executor;
+
+    // Packets are committed strictly in order, chunk packets are decoded ahead of time on the executor.
+    private final ArrayDeque<PendingPacket> pendingPackets = new ArrayDeque<>();
+    // Per-chunk chain of block updates (diffing) running on the executor, keyed by chunk coordinates.
+    // Any access to a chunk's block state on the analyzer thread must first wait for its chain to complete.
+    private final Long2ObjectMap<CompletableFuture<Void>> chunkUpdates = new Long2ObjectOpenHashMap<>();
 
     private int currentViewChunkX = 0;
     private int currentViewChunkZ = 0;
     private int currentViewDistance = 0;
     private int currentSimulationDistance = 0;
 
-    private final Map<String, PacketPlayerListEntry> playerListEntries = new HashMap<>();
+    private final PlayerList playerList;
     private Registries registries = new Registries();
     private final RegistriesBuilder registriesBuilder = new RegistriesBuilder();
     private Packet lastLightUpdate = null;
+    private int lastTime = 0;
+    private IntConsumer progress = time -> {};
+    // Whether the last packet passed to `process` started a new world, see `writeCheckpoint`
+    private boolean worldSwitched;
 
     public ReplayAnalyzer(PacketTypeRegistry registry, NetOutput out, WriteableCache cache) throws IOException {
+        this(registry, out, cache, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor Executor on which chunk packets are decoded and diffed. Everything else, including all writes to
+     *                 the cache, happens on the calling thread, in packet order.
+     */
+    public ReplayAnalyzer(PacketTypeRegistry registry, NetOutput out, WriteableCache cache, Executor executor) throws IOException {
         this.registry = registry;
         this.out = out;
         this.replay = new Replay.Builder(registry, cache);
+        this.executor = executor;
+        this.playerList = new PlayerList(registry);
     }
 
     public void analyse(ReplayInputStream in, IntConsumer progress) throws IOException {
-        int time = 0;
-        PacketData packetData;
-        while ((packetData = in.readPacket()) != null) {
+        analyse(in, progress, () -> false);
+    }
+
+    /**
+     * Analyses all packets of the given stream.
+     *
+     * @param cancelled Checked before every packet, once it returns {@code true}, analysis is aborted by throwing a
+     *                  {@link CancellationException}. Anything written to the output and cache so far is incomplete
+     *                  in that case and must be discarded.
+     */
+    public void analyse(ReplayInputStream in, IntConsumer progress, BooleanSupplier cancelled) throws IOException {
+        analyse(in, 0, progress, cancelled, null);
+    }
+
+    /**
+     * Analyses all remaining packets of the given stream.
+     *
+     * @param packets Amount of packets which have already been read from the stream, i.e. the position at which the
+     *                analysis is resumed via {@link #readCheckpoint(NetInput)}, or {@code 0} when starting from scratch
+     * @param cancelled Checked before every packet, once it returns {@code true}, analysis is aborted by throwing a
+     *                  {@link CancellationException}. Anything written to the output and cache since the last
+     *                  checkpoint is incomplete in that case.
+     * @param checkpoint Called with the total amount of packets read from the stream whenever the analysis reaches a
+     *                   point from which it can be resumed (i.e. after each world switch), at which point its state
+     *                   may be saved via {@link #writeCheckpoint(NetOutput)}. May be {@code null}.
+     */
+    public void analyse(ReplayInputStream in, int packets, IntConsumer progress, BooleanSupplier cancelled,
+                        IOConsumer<Integer> checkpoint) throws IOException {
+        this.progress = progress;
+        try {
+            PacketData packetData;
+            while (true) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("Replay analysis cancelled");
+                }
+                if ((packetData = in.readPacket()) == null) {
+                    break;
+                }
+                process(packetData);
+                packets++;
+                if (worldSwitched && checkpoint != null) {
+                    checkpoint.consume(packets);
+                }
+            }
+        } catch (Throwable t) {
+            discard();
+            throw t;
+        }
+        finish();
+    }
+
+    /**
+     * Feeds the next packet into the analyzer. Packets must be passed in order.
+     * The analyzer takes ownership of the given packet data and will release it once processed.
+     *
+     * @see #finish()
+     */
+    public void process(PacketData packetData) throws IOException {
+        lastTime = (int) packetData.getTime();
+        worldSwitched = false;
+
+        PacketType type = packetData.getPacket().getType();
+        if (type == PacketType.JoinGame || type == PacketType.Respawn) {
+            // These may change the dimension and therefore the height of chunks, so they (and all prior
+            // packets) need to be committed before we can continue decoding chunks ahead of time.
+            pendingPackets.add(new PendingPacket(packetData, null));
+            while (!pendingPackets.isEmpty()) {
+                commit(pendingPackets.poll());
+            }
+            return;
+        }
+
+        pendingPackets.add(new PendingPacket(packetData, decodeAhead(packetData.getPacket())));
+
+        if (pendingPackets.size() > MAX_PENDING_PACKETS) {
+            commit(pendingPackets.poll());
+        }
+    }
+
+    /**
+     * Commits all remaining packets and writes the index of the analysed replay to the output given on construction.
+     * No more packets may be passed to {@link #process(PacketData)} afterwards.
+     */
+    public void finish() throws IOException {
+        try {
+            while (!pendingPackets.isEmpty()) {
+                commit(pendingPackets.poll());
+            }
+            awaitAllChunkUpdates();
+        } finally {
+            discard();
+        }
+
+        replay.build(out, lastTime);
+    }
+
+    /**
+     * Releases all packets which have been passed to {@link #process(PacketData)} but not yet committed.
+     * Must be called if the analysis is aborted without calling {@link #finish()}.
+     * Waits for all work still running on the executor, such that nothing touches the analyzer's state (or the cache)
+     * once this method returns.
+     */
+    public void discard() {
+        for (PendingPacket pendingPacket : pendingPackets) {
+            if (pendingPacket.decoded != null) {
+                awaitQuietly(pendingPacket.decoded);
+            }
+            pendingPacket.data.release();
+        }
+        pendingPackets.clear();
+
+        for (CompletableFuture<Void> future : chunkUpdates.values()) {
+            awaitQuietly(future);
+        }
+        chunkUpdates.clear();
+
+        if (lastLightUpdate != null) {
+            lastLightUpdate.release();
+            lastLightUpdate = null;
+        }
+    }
+
+    /**
+     * Writes the state of the analysis, such that it can later be resumed from this point via
+     * {@link #readCheckpoint(NetInput)} (assuming the cache is restored to its current state as well, see
+     * {@link WriteableCache#writeState(NetOutput)}).
+     * Only possible right after a packet which started a new world, at which point everything of the previous worlds
+     * has been written to the cache, and the new world does not have any chunks or entities yet.
+     */
+    public void writeCheckpoint(NetOutput out) throws IOException {
+        if (!worldSwitched || !pendingPackets.isEmpty() || !chunkUpdates.isEmpty()) {
+            throw new IllegalStateException("Analysis can only be saved right after a world switch");
+        }
+        out.writeVarInt(lastTime);
+        out.writeInt(currentViewChunkX);
+        out.writeInt(currentViewChunkZ);
+        out.writeVarInt(currentViewDistance);
+        out.writeVarInt(currentSimulationDistance);
+        boolean hasRegistries = registries.registriesTag != null || registries.registriesMap != null;
+        out.writeBoolean(hasRegistries);
+        if (hasRegistries) {
+            registries.writeInternal(registry, out);
+        }
+        registriesBuilder.writeState(registry, out);
+        playerList.write(out);
+        out.writeBoolean(lastLightUpdate != null);
+        if (lastLightUpdate != null) {
+            Utils.writeCompressedPacket(out, lastLightUpdate);
+        }
+        replay.writeState(out);
+    }
+
+    /**
+     * Restores the state written by {@link #writeCheckpoint(NetOutput)}.
+     * Must be called on a new analyzer, before any packets are passed to it.
+     */
+    public void readCheckpoint(NetInput in) throws IOException {
+        lastTime = in.readVarInt();
+        currentViewChunkX = in.readInt();
+        currentViewChunkZ = in.readInt();
+        currentViewDistance = in.readVarInt();
+        currentSimulationDistance = in.readVarInt();
+        registries = in.readBoolean() ? Registries.readInternal(registry, in) : new Registries();
+        registriesBuilder.readState(registry, in);
+        playerList.read(in);
+        lastLightUpdate = in.readBoolean() ? Utils.readCompressedPacket(registry, in) : null;
+        replay.readState(in);
+    }
+
+    private CompletableFuture<?> decodeAhead(Packet packet) {
+        PacketType type = packet.getType();
+        if (type != PacketType.ChunkData && type != PacketType.BulkChunkData) {
+            return null;
+        }
+        if (replay.world == null) {
+            return null; // no dimension yet, will be decoded (and fail) in-order
+        }
+        int sections = replay.world.info.dimensionType.getSections();
+        // Decoding moves the reader index, so we give the worker its own view of the packet
+        Packet copy = packet.copy();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (type == PacketType.BulkChunkData) {
+                    return PacketChunkData.readBulk(copy);
+                } else {
+                    return PacketChunkData.readBlocksOnly(copy, sections);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                copy.release();
+            }
+        }, executor);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private void updateChunkAsync(long key, Runnable update) throws IOException {
+        CompletableFuture<Void> prev = chunkUpdates.get(key);
+        if (prev != null && prev.isDone()) {
+            join(prev); // propagate errors
+            prev = null;
+        }
+        chunkUpdates.put(key, prev == null ? CompletableFuture.runAsync(update, executor) : prev.thenRunAsync(update, executor));
+    }
+
+    private void updateChunk(long key, Runnable update) throws IOException {
+        CompletableFuture<Void> prev = chunkUpdates.get(key);
+        if (prev != null && !prev.isDone()) {
+            chunkUpdates.put(key, prev.thenRunAsync(update, executor));
+        } else {
+            if (prev != null) {
+                chunkUpdates.remove(key);
+                join(prev); // propagate errors
+            }
+            update.run();
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException | CancellationException ignored) {
+            // we are discarding the results anyway
+        }
+    }
+
+    private void awaitChunkUpdates(long key) throws IOException {
+        CompletableFuture<Void> future = chunkUpdates.remove(key);
+        if (future != null) {
+            join(future);
+        }
+    }
+
+    private void awaitAllChunkUpdates() throws IOException {
+        for (CompletableFuture<Void> future : chunkUpdates.values()) {
+            join(future);
+        }
+        chunkUpdates.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void commit(PendingPacket pendingPacket) throws IOException {
+        PacketData packetData = pendingPacket.data;
+        try {
             Packet packet = packetData.getPacket();
-            time = (int) packetData.getTime();
+            int time = (int) packetData.getTime();
             progress.accept(time);
             Integer entityId = PacketUtils.getEntityId(packet);
             PacketType type = packet.getType();
@@ -89,7 +382,7 @@ public class ReplayAnalyzer {
                     Entity.Builder entity = replay.world.transientThings.newEntity(time, entityId);
 
                     if (type == (packet.atLeast(ProtocolVersion.v1_20_2) ? PacketType.SpawnObject : PacketType.SpawnPlayer)) {
-                        PacketPlayerListEntry entry = playerListEntries.get(PacketSpawnPlayer.getPlayerListEntryId(packet));
+                        PacketPlayerListEntry entry = playerList.get(PacketSpawnPlayer.getPlayerListEntryId(packet));
                         if (entry != null) {
                             entity.addSpawnPacket(PacketPlayerListEntry.write(registry, PacketPlayerListEntry.Action.init(registry), entry));
                         }
@@ -107,17 +400,22 @@ public class ReplayAnalyzer {
                 }
                 case UnloadChunk:
                 case ChunkData: {
-                    PacketChunkData chunkData = PacketChunkData.read(packet, replay.world.info.dimensionType.getSections());
+                    PacketChunkData chunkData = pendingPacket.decoded != null
+                            ? join((CompletableFuture<PacketChunkData>) pendingPacket.decoded)
+                            : PacketChunkData.readBlocksOnly(packet, replay.world.info.dimensionType.getSections());
                     if (chunkData.isUnload()) {
-                        replay.world.transientThings.removeChunk(time, chunkData.getUnloadX(), chunkData.getUnloadZ());
+                        removeChunk(time, PacketChunkData.Column.coordToLong(chunkData.getUnloadX(), chunkData.getUnloadZ()));
                     } else {
-                        processChunkLoad(time, chunkData.getColumn());
+                        processChunkLoad(time, chunkData.getColumn(), packet);
                     }
                     break;
                 }
                 case BulkChunkData: {
-                    for (PacketChunkData.Column column : PacketChunkData.readBulk(packet)) {
-                        processChunkLoad(time, column);
+                    List<PacketChunkData.Column> columns = pendingPacket.decoded != null
+                            ? join((CompletableFuture<List<PacketChunkData.Column>>) pendingPacket.decoded)
+                            : PacketChunkData.readBulk(packet);
+                    for (PacketChunkData.Column column : columns) {
+                        processChunkLoad(time, column, null);
                     }
                     break;
                 }
@@ -150,51 +448,17 @@ public class ReplayAnalyzer {
                         IPosition pos = record.getPosition();
                         Chunk.Builder chunk = replay.world.transientThings.getChunk(pos.getX() >> 4, pos.getZ() >> 4);
                         if (chunk != null) {
-                            chunk.blocks.update(time, record);
+                            updateChunk(PacketChunkData.Column.coordToLong(pos.getX() >> 4, pos.getZ() >> 4),
+                                    () -> chunk.blocks.update(time, record));
                         }
                     }
                     break;
                 }
-                case PlayerListEntry: {
-                    Set<PacketPlayerListEntry.Action> actions = PacketPlayerListEntry.getActions(packet);
-                    for (PacketPlayerListEntry entry : PacketPlayerListEntry.read(packet)) {
-                        for (PacketPlayerListEntry.Action action : actions) {
-                            switch (action) {
-                                case ADD:
-                                    playerListEntries.put(entry.getId(), entry);
-                                    break;
-                                case CHAT_KEY:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateChatKey(it, entry.getSigData()));
-                                    break;
-                                case GAMEMODE:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateGamemode(it, entry.getGamemode()));
-                                    break;
-                                case LISTED:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateListed(it, entry.isListed()));
-                                    break;
-                                case LATENCY:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateLatency(it, entry.getLatency()));
-                                    break;
-                                case DISPLAY_NAME:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateDisplayName(it, entry.getDisplayName()));
-                                    break;
-                                case LIST_ORDER:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateListOrder(it, entry.getListOrder()));
-                                    break;
-                                case SHOW_HAT:
-                                    playerListEntries.computeIfPresent(entry.getId(), (key, it) ->
-                                            PacketPlayerListEntry.updateShowHat(it, entry.getShowHat()));
-                                    break;
-                                case REMOVE:
-                                    playerListEntries.remove(entry.getId());
-                            }
-                        }
+                case PlayerListEntry:
+                case PlayerListEntryRemove: {
+                    List<Packet> undo = playerList.update(PacketPlayerListEntry.getActions(packet), PacketPlayerListEntry.read(packet));
+                    if (undo != null) {
+                        replay.playerList.put(time, packet.retain(), undo);
                     }
                     break;
                 }
@@ -202,7 +466,9 @@ public class ReplayAnalyzer {
                     PacketRespawn respawn = PacketRespawn.read(packet, replay.world.info.registries);
                     String newDimension = respawn.dimension;
                     if (!newDimension.equals(replay.world.info.dimension)) {
+                        awaitAllChunkUpdates();
                         World.Builder world = replay.newWorld(time, new World.Info(replay.world.info, respawn));
+                        worldSwitched = true;
                         if (registry.atLeast(ProtocolVersion.v1_14)) {
                             currentViewChunkX = currentViewChunkZ = 0;
                             world.viewPosition.put(time, PacketUpdateViewPosition.write(registry, 0, 0));
@@ -216,7 +482,9 @@ public class ReplayAnalyzer {
                 }
                 case JoinGame: {
                     PacketJoinGame joinGame = PacketJoinGame.read(packet, registries);
+                    awaitAllChunkUpdates();
                     replay.newWorld(time, new World.Info(joinGame, joinGame.registries));
+                    worldSwitched = true;
                     if (registry.atLeast(ProtocolVersion.v1_14)) {
                         currentViewChunkX = currentViewChunkZ = 0;
                         replay.world.viewPosition.put(time, PacketUpdateViewPosition.write(registry, 0, 0));
@@ -307,19 +575,20 @@ public class ReplayAnalyzer {
                     }
                 }
             }
-            packet.release();
+        } finally {
+            packetData.release();
         }
-
-        if (lastLightUpdate != null) {
-            lastLightUpdate.release();
-        }
-
-        replay.build(out, time);
     }
 
-    private void processChunkLoad(int time, PacketChunkData.Column column) throws IOException {
+    /**
+     * @param packet The packet the column was read from, if it is the only column in it. Full columns read via
+     *               {@link PacketChunkData#readBlocksOnly} can only be stored by keeping their original packet.
+     */
+    private void processChunkLoad(int time, PacketChunkData.Column column, Packet packet) throws IOException {
         if (column.isFull()) {
-            Chunk.Builder chunk = replay.world.transientThings.newChunk(time, column);
+            awaitChunkUpdates(column.coordToLong()); // may replace an existing chunk, which will then be built
+            Packet spawnPacket = packet != null && column.isBlocksOnly() ? packet.retain() : null;
+            Chunk.Builder chunk = replay.world.transientThings.newChunk(time, column, spawnPacket);
             if (lastLightUpdate != null) {
                 PacketUpdateLight updateLight = PacketUpdateLight.read(lastLightUpdate);
                 if (column.x == updateLight.getX() && column.z == updateLight.getZ()) {
@@ -330,7 +599,7 @@ public class ReplayAnalyzer {
         } else {
             Chunk.Builder chunk = replay.world.transientThings.getChunk(column.x, column.z);
             if (chunk != null) {
-                chunk.blocks.update(time, column);
+                updateChunkAsync(column.coordToLong(), () -> chunk.blocks.update(time, column));
             }
         }
     }
@@ -351,7 +620,22 @@ public class ReplayAnalyzer {
         }
 
         for (long key : toBeRemoved) {
-            replay.world.transientThings.removeChunk(time, key);
+            removeChunk(time, key);
+        }
+    }
+
+    private void removeChunk(int time, long key) throws IOException {
+        awaitChunkUpdates(key);
+        replay.world.transientThings.removeChunk(time, key);
+    }
+
+    private static class PendingPacket {
+        private final PacketData data;
+        private final CompletableFuture<?> decoded;
+
+        private PendingPacket(PacketData data, CompletableFuture<?> decoded) {
+            this.data = data;
+            this.decoded = decoded;
         }
     }
 }
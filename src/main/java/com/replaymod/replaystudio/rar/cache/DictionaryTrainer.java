@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.replaymod.replaystudio.rar.cache;
+
+import com.github.steveice10.netty.buffer.ByteBuf;
+import com.github.steveice10.packetlib.io.NetInput;
+import com.github.steveice10.packetlib.io.NetOutput;
+import com.replaymod.replaystudio.protocol.Packet;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Builds a preset dictionary for the compression of packets in the cache by sampling the first few (small) packets
+ * written to it.
+ * Spawn and state packets are highly repetitive between things (same entity metadata layout, same block entities, etc.)
+ * but individually too small for zlib to find much to compress. A dictionary made up of such packets gives it the
+ * shared context it would otherwise lack.
+ */
+class DictionaryTrainer {
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024; // size of the zlib window, anything beyond is useless
+    private static final int MIN_DICTIONARY_SIZE = 1024;
+    private static final int MAX_SAMPLE_SIZE = 1024;
+    private static final int MAX_SAMPLES_PER_TYPE = 32;
+    private static final int MAX_PACKETS_OFFERED = 16 * 1024;
+
+    private final Int2IntMap samplesPerType = new Int2IntOpenHashMap();
+    private final ByteArrayOutputStream samples = new ByteArrayOutputStream();
+    private int packetsOffered;
+    private boolean done;
+    private byte[] dictionary;
+
+    /**
+     * Returns the trained dictionary or {@code null} if training is not yet complete or did not yield a useful one.
+     */
+    byte[] getDictionary() {
+        return dictionary;
+    }
+
+    void offer(Packet packet) {
+        if (done) {
+            return;
+        }
+
+        ByteBuf buf = packet.getBuf();
+        int len = buf.readableBytes();
+        int type = packet.getType().ordinal();
+        int sampleCount = samplesPerType.get(type);
+        if (len <= MAX_SAMPLE_SIZE && sampleCount < MAX_SAMPLES_PER_TYPE) {
+            samplesPerType.put(type, sampleCount + 1);
+            byte[] bytes = new byte[len];
+            buf.getBytes(buf.readerIndex(), bytes);
+            samples.write(bytes, 0, len);
+        }
+
+        if (samples.size() >= MAX_DICTIONARY_SIZE || ++packetsOffered >= MAX_PACKETS_OFFERED) {
+            finish();
+        }
+    }
+
+    /**
+     * Writes the current state of training, such that it can be continued via {@link #readState(NetInput)}.
+     */
+    void writeState(NetOutput out) throws IOException {
+        out.writeBoolean(done);
+        if (done) {
+            out.writeBoolean(dictionary != null);
+            if (dictionary != null) {
+                out.writeVarInt(dictionary.length);
+                out.writeBytes(dictionary);
+            }
+        } else {
+            out.writeVarInt(packetsOffered);
+            out.writeVarInt(samplesPerType.size());
+            for (Int2IntMap.Entry entry : samplesPerType.int2IntEntrySet()) {
+                out.writeVarInt(entry.getIntKey());
+                out.writeVarInt(entry.getIntValue());
+            }
+            byte[] bytes = samples.toByteArray();
+            out.writeVarInt(bytes.length);
+            out.writeBytes(bytes);
+        }
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(NetOutput)}. Must be called before any packets are offered.
+     */
+    void readState(NetInput in) throws IOException {
+        done = in.readBoolean();
+        if (done) {
+            dictionary = in.readBoolean() ? in.readBytes(in.readVarInt()) : null;
+        } else {
+            packetsOffered = in.readVarInt();
+            for (int i = in.readVarInt(); i > 0; i--) {
+                samplesPerType.put(in.readVarInt(), in.readVarInt());
+            }
+            byte[] bytes = in.readBytes(in.readVarInt());
+            samples.write(bytes, 0, bytes.length);
+        }
+    }
+
+    private void finish() {
+        done = true;
+        if (samples.size() >= MIN_DICTIONARY_SIZE) {
+            byte[] bytes = samples.toByteArray();
+            // zlib favours recent data, so if we have too much, we drop the oldest samples
+            dictionary = Arrays.copyOfRange(bytes, Math.max(0, bytes.length - MAX_DICTIONARY_SIZE), bytes.length);
+        }
+        samplesPerType.clear();
+        samples.reset();
+    }
+}
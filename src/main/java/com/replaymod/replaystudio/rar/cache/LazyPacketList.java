@@ -29,9 +29,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.replaymod.replaystudio.util.Utils.readCompressedPacket;
-import static com.replaymod.replaystudio.util.Utils.writeCompressedPacket;
-
 public class LazyPacketList {
     private final PacketTypeRegistry registry;
     private final int index;
@@ -44,7 +41,7 @@ public class LazyPacketList {
     public void read(PacketSink sink, ReadableCache cache) throws IOException {
         NetInput in = cache.seek(index);
         for (int i = in.readVarInt(); i > 0; i--) {
-            sink.accept(readCompressedPacket(registry, in));
+            sink.accept(cache.readPacket(registry, in));
         }
     }
 
@@ -61,7 +58,7 @@ public class LazyPacketList {
             NetOutput out = cache.write();
             out.writeVarInt(list.size());
             for (Packet packet : list) {
-                writeCompressedPacket(out, packet);
+                cache.writePacket(out, packet);
                 packet.release();
             }
 
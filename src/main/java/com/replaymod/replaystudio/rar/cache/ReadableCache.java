@@ -20,23 +20,75 @@
 package com.replaymod.replaystudio.rar.cache;
 
 import com.github.steveice10.netty.buffer.ByteBuf;
+import com.github.steveice10.netty.buffer.PooledByteBufAllocator;
 import com.github.steveice10.packetlib.io.NetInput;
+import com.github.steveice10.packetlib.io.NetOutput;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.util.ByteBufExtNetInput;
+import com.replaymod.replaystudio.util.Utils;
+
+import java.io.IOException;
 
 public class ReadableCache {
     private final ByteBuf buf;
     private final NetInput in;
+    private final byte[] dictionary;
+    private long bytesRead;
+    private int lastSeek;
 
     public ReadableCache(ByteBuf buf) {
+        this(buf, null);
+    }
+
+    /**
+     * @param dictionary The preset dictionary used for compressing packets in this cache, see
+     *                   {@link WriteableCache#getDictionary()}
+     */
+    public ReadableCache(ByteBuf buf, byte[] dictionary) {
         this.buf = buf;
         this.in = new ByteBufExtNetInput(buf);
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Creates a new view of this cache with its own read position, so it can be used concurrently with this one (e.g.
+     * on a background thread). The returned cache must be released separately.
+     */
+    public ReadableCache fork() {
+        return new ReadableCache(buf.retainedDuplicate(), dictionary);
     }
 
     public NetInput seek(int index) {
+        bytesRead += buf.readerIndex() - lastSeek;
         buf.readerIndex(index);
+        lastSeek = index;
         return in;
     }
 
+    /**
+     * Returns the total amount of bytes read from this cache so far (not including any of its forks).
+     */
+    public long bytesRead() {
+        return bytesRead + buf.readerIndex() - lastSeek;
+    }
+
+    /**
+     * Returns the current read position, i.e. the index at which the next read from the last {@link #seek} will start.
+     */
+    public int index() {
+        return buf.readerIndex();
+    }
+
+    /**
+     * Reads a packet written by {@link WriteableCache#writePacket(NetOutput, Packet)}.
+     * Compressed packets are inflated into pooled buffers, so packets which are no longer needed must be released (as
+     * opposed to just being left for the garbage collector), otherwise the pool will leak.
+     */
+    public Packet readPacket(PacketTypeRegistry registry, NetInput in) throws IOException {
+        return Utils.readCompressedPacket(registry, in, dictionary, PooledByteBufAllocator.DEFAULT);
+    }
+
     public void release() {
         buf.release();
     }
@@ -21,8 +21,11 @@ package com.replaymod.replaystudio.rar.cache;
 
 import com.github.steveice10.netty.buffer.ByteBuf;
 import com.github.steveice10.netty.buffer.Unpooled;
+import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
 import com.github.steveice10.packetlib.io.stream.StreamNetOutput;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.util.ByteBufExtNetOutput;
 import com.replaymod.replaystudio.util.Utils;
 
@@ -32,9 +35,20 @@ import java.io.OutputStream;
 public class WriteableCache {
     private final CountingOutputStream wrapper;
     private final NetOutput out;
+    private final DictionaryTrainer dictionaryTrainer = new DictionaryTrainer();
 
     public WriteableCache(OutputStream out) {
+        this(out, 0);
+    }
+
+    /**
+     * Creates a cache which continues a previously written one, see {@link #writeState(NetOutput)}.
+     *
+     * @param index Amount of bytes which have already been written to the given output
+     */
+    public WriteableCache(OutputStream out, int index) {
         this.wrapper = new CountingOutputStream(out);
+        this.wrapper.index = index;
         this.out = new StreamNetOutput(wrapper);
     }
 
@@ -46,6 +60,44 @@ public class WriteableCache {
         return out;
     }
 
+    /**
+     * Writes the given packet (compressed) to the given output (usually from {@link #write()} or {@link #deferred()}).
+     * The first few packets are used to train a preset dictionary, which all subsequent packets are compressed with.
+     * Does not release the packet.
+     *
+     * @see ReadableCache#readPacket(PacketTypeRegistry, NetInput)
+     * @see #getDictionary()
+     */
+    public void writePacket(NetOutput out, Packet packet) throws IOException {
+        dictionaryTrainer.offer(packet);
+        Utils.writeCompressedPacket(out, packet, dictionaryTrainer.getDictionary());
+    }
+
+    /**
+     * Returns the preset dictionary used for packets written to this cache, or {@code null} if none was used.
+     * Must be stored along with the cache and passed to {@link ReadableCache} when reading it.
+     */
+    public byte[] getDictionary() {
+        return dictionaryTrainer.getDictionary();
+    }
+
+    /**
+     * Writes the state required to continue writing to this cache at a later point (e.g. after a restart), i.e. the
+     * state of the dictionary training. Does not include {@link #index()} nor any data written so far.
+     *
+     * @see #readState(NetInput)
+     */
+    public void writeState(NetOutput out) throws IOException {
+        dictionaryTrainer.writeState(out);
+    }
+
+    /**
+     * Restores the state written by {@link #writeState(NetOutput)}. Must be called before any packets are written.
+     */
+    public void readState(NetInput in) throws IOException {
+        dictionaryTrainer.readState(in);
+    }
+
     public Deferred deferred() {
         return new Deferred(Unpooled.buffer());
     }
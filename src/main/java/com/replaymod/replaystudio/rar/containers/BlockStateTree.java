@@ -21,24 +21,34 @@ package com.replaymod.replaystudio.rar.containers;
 
 import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
-import com.replaymod.replaystudio.lib.guava.collect.ListMultimap;
-import com.replaymod.replaystudio.lib.guava.collect.Multimaps;
 import com.replaymod.replaystudio.lib.viaversion.api.minecraft.chunks.PaletteType;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
 import com.replaymod.replaystudio.protocol.Packet;
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.protocol.packets.PacketBlockChange;
 import com.replaymod.replaystudio.protocol.packets.PacketChunkData;
 import com.replaymod.replaystudio.protocol.registry.DimensionType;
 import com.replaymod.replaystudio.rar.PacketSink;
+import com.replaymod.replaystudio.rar.SeekMetrics;
 import com.replaymod.replaystudio.util.IPosition;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMaps;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
-public class BlockStateTree extends DiffStateTree<Collection<BlockStateTree.BlockChange>>  {
+/**
+ * Stores block changes of a single chunk.
+ * Each change is stored as two consecutive longs: the packed position (see {@link #packPosition}) and the previous
+ * and new state (see {@link #packStates}).
+ */
+public class BlockStateTree extends DiffStateTree<long[]>  {
 
     private final PacketTypeRegistry registry;
 
@@ -48,43 +58,123 @@ public class BlockStateTree extends DiffStateTree<Collection<BlockStateTree.Bloc
     }
 
     @Override
-    protected Collection<BlockChange> read(NetInput in) throws IOException {
-        List<BlockChange> list = new LinkedList<>(); // LinkedList to allow .descendingIterator
-
-        for (int j = in.readVarInt(); j > 0; j--) {
-            list.add(new BlockChange(
-                    Packet.Reader.readPosition(registry, in),
-                    in.readVarInt(),
-                    in.readVarInt()
-            ));
+    protected long[] read(NetInput in) throws IOException {
+        long[] changes = new long[in.readVarInt() * 2];
+        for (int i = 0; i < changes.length; i += 2) {
+            changes[i] = packPosition(Packet.Reader.readPosition(registry, in));
+            changes[i + 1] = packStates(in.readVarInt(), in.readVarInt());
         }
+        return changes;
+    }
+
+    @Override
+    protected void discard(long[] value) {
+    }
 
-        return list;
+    @Override
+    protected void play(PacketSink sink, long[] value) throws IOException {
+        for (int i = 0; i < value.length; i += 2) {
+            sink.accept(PacketBlockChange.write(registry, unpackPosition(value[i]), unpackTo(value[i + 1])));
+        }
     }
 
     @Override
-    protected void discard(Collection<BlockChange> value) {
+    protected void rewind(PacketSink sink, long[] value) throws IOException {
+        for (int i = value.length - 2; i >= 0; i -= 2) {
+            sink.accept(PacketBlockChange.write(registry, unpackPosition(value[i]), unpackFrom(value[i + 1])));
+        }
     }
 
     @Override
-    protected void play(PacketSink sink, Collection<BlockChange> value) throws IOException {
-        for (BlockChange change : value) {
-            sink.accept(new PacketBlockChange(change.pos, change.to).write(registry));
+    public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.BLOCKS);
+        try {
+            Collection<long[]> updates = map.subMap(currentTimeStamp, false, targetTime, true).values();
+            if (updates.isEmpty()) {
+                return;
+            }
+            // Only the final state of each block matters, so when going forward the last change wins
+            Long2IntMap states = new Long2IntOpenHashMap();
+            for (long[] changes : updates) {
+                for (int i = 0; i < changes.length; i += 2) {
+                    states.put(changes[i], unpackTo(changes[i + 1]));
+                }
+            }
+            sendChanges(sink, states);
+        } finally {
+            SeekMetrics.exit(metrics);
         }
     }
 
     @Override
-    protected void rewind(PacketSink sink, Collection<BlockChange> value) throws IOException {
-        for (Iterator<BlockChange> it = ((LinkedList<BlockChange>) value).descendingIterator(); it.hasNext(); ) {
-            BlockChange update = it.next();
-            sink.accept(PacketBlockChange.write(registry, update.pos, update.from));
+    public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.BLOCKS);
+        try {
+            Collection<long[]> updates = map.subMap(targetTime, false, currentTimeStamp, true).descendingMap().values();
+            if (updates.isEmpty()) {
+                return;
+            }
+            // Only the final state of each block matters, so when going backwards the earliest change wins
+            Long2IntMap states = new Long2IntOpenHashMap();
+            for (long[] changes : updates) {
+                for (int i = changes.length - 2; i >= 0; i -= 2) {
+                    states.put(changes[i], unpackFrom(changes[i + 1]));
+                }
+            }
+            sendChanges(sink, states);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    /**
+     * Sends the given block states, batched into one multi block change packet per section (per chunk prior to
+     * 1.16.2, where the packet was not yet section based).
+     */
+    private void sendChanges(PacketSink sink, Long2IntMap states) throws IOException {
+        boolean perSection = registry.atLeast(ProtocolVersion.v1_16_2);
+        Int2ObjectMap<List<PacketBlockChange>> sections = new Int2ObjectOpenHashMap<>();
+        for (Long2IntMap.Entry entry : Long2IntMaps.fastIterable(states)) {
+            IPosition pos = unpackPosition(entry.getLongKey());
+            int section = perSection ? pos.getY() >> 4 : 0;
+            sections.computeIfAbsent(section, k -> new ArrayList<>()).add(new PacketBlockChange(pos, entry.getIntValue()));
         }
+        for (List<PacketBlockChange> changes : sections.values()) {
+            if (changes.size() == 1) {
+                sink.accept(changes.get(0).write(registry));
+            } else {
+                sink.accept(PacketBlockChange.writeBulk(registry, changes));
+            }
+        }
+    }
+
+    public static long packPosition(int x, int y, int z) {
+        return ((long) x & 0x3ffffff) << 38 | ((long) z & 0x3ffffff) << 12 | ((long) y & 0xfff);
+    }
+
+    public static long packPosition(IPosition pos) {
+        return packPosition(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    public static IPosition unpackPosition(long packed) {
+        return new IPosition((int) (packed >> 38), (int) (packed << 52 >> 52), (int) (packed << 26 >> 38));
+    }
+
+    public static long packStates(int from, int to) {
+        return (long) from << 32 | to & 0xffffffffL;
+    }
+
+    public static int unpackFrom(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int unpackTo(long packed) {
+        return (int) packed;
     }
 
-    public static class Builder extends DiffStateTree.Builder<Collection<BlockChange>> {
+    public static class Builder extends DiffStateTree.Builder<LongArrayList> {
         private final PacketTypeRegistry registry;
         private final DimensionType dimensionType;
-        private final ListMultimap<Integer, BlockChange> blocks = Multimaps.newListMultimap(map, LinkedList::new); // LinkedList to allow .descendingIterator
         private final PacketChunkData.PalettedStorage[] currentBlockState;
 
         public Builder(PacketTypeRegistry registry, DimensionType dimensionType, PacketChunkData.Column column) {
@@ -100,6 +190,10 @@ public class BlockStateTree extends DiffStateTree<Collection<BlockStateTree.Bloc
             }
         }
 
+        private LongArrayList changesAt(int time) {
+            return map.computeIfAbsent(time, k -> new LongArrayList());
+        }
+
         public void update(int time, PacketBlockChange record) {
             IPosition pos = record.getPosition();
             int sectionIndex = dimensionType.sectionYToIndex(pos.getY() >> 4);
@@ -111,10 +205,13 @@ public class BlockStateTree extends DiffStateTree<Collection<BlockStateTree.Bloc
             int prevState = blockStorage.get(x, y, z);
             int newState = record.getId();
             blockStorage.set(x, y, z, newState);
-            blocks.put(time, new BlockChange(pos, prevState, newState));
+            LongArrayList changes = changesAt(time);
+            changes.add(packPosition(pos));
+            changes.add(packStates(prevState, newState));
         }
 
         public void update(int time, PacketChunkData.Column column) {
+            LongArrayList changes = changesAt(time);
             int sectionY = dimensionType.getMinY();
             int sectionIndex = 0;
             for (PacketChunkData.Chunk section : column.chunks) {
@@ -125,49 +222,33 @@ public class BlockStateTree extends DiffStateTree<Collection<BlockStateTree.Bloc
                 }
                 PacketChunkData.PalettedStorage toBlocks = section.blocks;
                 PacketChunkData.PalettedStorage fromBlocks = currentBlockState[sectionIndex];
-                for (int y = 0; y < 16; y++) {
-                    for (int z = 0; z < 16; z++) {
-                        for (int x = 0; x < 16; x++) {
-                            int fromState = fromBlocks.get(x, y, z);
-                            int toState = toBlocks.get(x, y, z);
-                            if (fromState != toState) {
-                                IPosition pos = new IPosition(column.x << 4 | x, sectionY << 4 | y, column.z << 4 | z);
-                                blocks.put(time, new BlockChange(pos, fromState, toState));
-                            }
-                        }
-                    }
-                }
+                int baseX = column.x << 4, baseY = sectionY << 4, baseZ = column.z << 4;
+                fromBlocks.diff(toBlocks, (index, fromState, toState) -> {
+                    changes.add(packPosition(baseX | index & 15, baseY | index >> 8, baseZ | index >> 4 & 15));
+                    changes.add(packStates(fromState, toState));
+                });
                 currentBlockState[sectionIndex] = toBlocks;
                 sectionY++;
                 sectionIndex++;
             }
-
+            if (changes.isEmpty()) {
+                map.remove(time);
+            }
         }
 
         @Override
-        protected void write(NetOutput out, Collection<BlockChange> value, int time) throws IOException {
-            out.writeVarInt(value.size());
-            for (BlockChange blockChange : value) {
-                Packet.Writer.writePosition(registry, out, blockChange.pos);
-                out.writeVarInt(blockChange.from);
-                out.writeVarInt(blockChange.to);
+        protected void write(NetOutput out, LongArrayList value, int time) throws IOException {
+            out.writeVarInt(value.size() / 2);
+            for (int i = 0; i < value.size(); i += 2) {
+                Packet.Writer.writePosition(registry, out, unpackPosition(value.getLong(i)));
+                long states = value.getLong(i + 1);
+                out.writeVarInt(unpackFrom(states));
+                out.writeVarInt(unpackTo(states));
             }
         }
 
         @Override
-        protected void discard(Collection<BlockChange> value) {
-        }
-    }
-
-    public static class BlockChange {
-        public IPosition pos;
-        public int from;
-        public int to;
-
-        public BlockChange(IPosition pos, int from, int to) {
-            this.pos = pos;
-            this.from = from;
-            this.to = to;
+        protected void discard(LongArrayList value) {
         }
     }
 }
@@ -22,18 +22,83 @@ package com.replaymod.replaystudio.rar.containers;
 import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
 import com.replaymod.replaystudio.rar.PacketSink;
+import com.replaymod.replaystudio.rar.SeekMetrics;
 import com.replaymod.replaystudio.util.IOBiConsumer;
 import com.replaymod.replaystudio.util.Location;
 
 import java.io.IOException;
+import java.util.Map;
 import java.util.function.BiConsumer;
 
 public abstract class LocationStateTree extends FullStateTree<Location>  {
+    /**
+     * Locations further apart than this (squared, in blocks) are assumed to be a teleport and will not be interpolated.
+     */
+    private static final double MAX_INTERPOLATION_DISTANCE_SQ = 8 * 8;
 
     public LocationStateTree(int index) {
         super(index);
     }
 
+    @Override
+    public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.LOCATIONS);
+        try {
+            super.play(sink, currentTimeStamp, targetTime);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    @Override
+    public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.LOCATIONS);
+        try {
+            super.rewind(sink, currentTimeStamp, targetTime);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    /**
+     * Returns the location at the given time, linearly interpolated between the two closest stored locations.
+     *
+     * @return The interpolated location, or {@code null} if there is no location at or before the given time
+     */
+    public Location sample(int time) {
+        Map.Entry<Integer, Location> floor = map.floorEntry(time);
+        if (floor == null) {
+            return null;
+        }
+        Map.Entry<Integer, Location> ceiling = map.higherEntry(time);
+        if (ceiling == null) {
+            return floor.getValue();
+        }
+        Location from = floor.getValue();
+        Location to = ceiling.getValue();
+        double dx = to.getX() - from.getX();
+        double dy = to.getY() - from.getY();
+        double dz = to.getZ() - from.getZ();
+        if (dx * dx + dy * dy + dz * dz > MAX_INTERPOLATION_DISTANCE_SQ) {
+            return from;
+        }
+        double t = (double) (time - floor.getKey()) / (ceiling.getKey() - floor.getKey());
+        return new Location(
+                from.getX() + dx * t,
+                from.getY() + dy * t,
+                from.getZ() + dz * t,
+                from.getYaw() + wrapDegrees(to.getYaw() - from.getYaw()) * (float) t,
+                from.getPitch() + (to.getPitch() - from.getPitch()) * (float) t
+        );
+    }
+
+    private static float wrapDegrees(float degrees) {
+        degrees %= 360;
+        if (degrees >= 180) degrees -= 360;
+        if (degrees < -180) degrees += 360;
+        return degrees;
+    }
+
     @Override
     protected Location read(NetInput in) throws IOException {
         return new Location(in.readDouble(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat());
@@ -44,6 +109,26 @@ public abstract class LocationStateTree extends FullStateTree<Location>  {
     }
 
     public static class Builder extends FullStateTree.Builder<Location> {
+        /**
+         * Returns the bounds, as {@code {minX, minZ, maxX, maxZ}} in chunk coordinates, of all locations in this tree,
+         * or {@code null} if it is empty.
+         */
+        public int[] getChunkBounds() {
+            if (map.isEmpty()) {
+                return null;
+            }
+            int[] bounds = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE };
+            for (Location location : map.values()) {
+                int x = (int) Math.floor(location.getX() / 16);
+                int z = (int) Math.floor(location.getZ() / 16);
+                bounds[0] = Math.min(bounds[0], x);
+                bounds[1] = Math.min(bounds[1], z);
+                bounds[2] = Math.max(bounds[2], x);
+                bounds[3] = Math.max(bounds[3], z);
+            }
+            return bounds;
+        }
+
         @Override
         protected void write(NetOutput out, Location value, int time) throws IOException {
             out.writeDouble(value.getX());
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.rar.containers;
+
+import com.github.steveice10.packetlib.io.NetInput;
+import com.github.steveice10.packetlib.io.NetOutput;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import com.replaymod.replaystudio.rar.PacketSink;
+import com.replaymod.replaystudio.rar.SeekMetrics;
+import com.replaymod.replaystudio.rar.cache.ReadableCache;
+import com.replaymod.replaystudio.rar.cache.WriteableCache;
+import com.replaymod.replaystudio.util.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores, for each point in time, the packets which were received at that time together with packets which undo
+ * their effect.
+ * Useful for state which is too large to be re-sent in full on every change (e.g. the player list).
+ */
+public class PacketDiffStateTree extends DiffStateTree<PacketDiffStateTree.Diff> {
+
+    private final PacketTypeRegistry registry;
+    private final String label;
+    private ReadableCache cache;
+
+    public PacketDiffStateTree(PacketTypeRegistry registry, int index) {
+        this(registry, index, null);
+    }
+
+    /**
+     * @param label Label under which this tree's work is reported to {@link SeekMetrics}, may be {@code null}
+     */
+    public PacketDiffStateTree(PacketTypeRegistry registry, int index, String label) {
+        super(index);
+        this.registry = registry;
+        this.label = label;
+    }
+
+    @Override
+    public void load(PacketSink sink, ReadableCache cache) throws IOException {
+        this.cache = cache;
+        try {
+            super.load(sink, cache);
+        } finally {
+            this.cache = null;
+        }
+    }
+
+    @Override
+    public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.PACKETS, label);
+        try {
+            super.play(sink, currentTimeStamp, targetTime);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    @Override
+    public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.PACKETS, label);
+        try {
+            super.rewind(sink, currentTimeStamp, targetTime);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    @Override
+    protected Diff read(NetInput in) throws IOException {
+        return new Diff(readPackets(in), readPackets(in));
+    }
+
+    private List<Packet> readPackets(NetInput in) throws IOException {
+        int size = in.readVarInt();
+        List<Packet> packets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            packets.add(cache.readPacket(registry, in));
+        }
+        return packets;
+    }
+
+    @Override
+    protected void discard(Diff value) {
+        value.release();
+    }
+
+    @Override
+    protected void play(PacketSink sink, Diff value) throws IOException {
+        for (Packet packet : value.forward) {
+            sink.accept(packet.retain());
+        }
+    }
+
+    @Override
+    protected void rewind(PacketSink sink, Diff value) throws IOException {
+        for (Packet packet : value.backward) {
+            sink.accept(packet.retain());
+        }
+    }
+
+    public static class Diff {
+        /**
+         * Packets to be sent in order when passing this point in time while playing forwards.
+         */
+        public final List<Packet> forward;
+        /**
+         * Packets to be sent in order when passing this point in time while rewinding.
+         */
+        public final List<Packet> backward;
+
+        public Diff(List<Packet> forward, List<Packet> backward) {
+            this.forward = forward;
+            this.backward = backward;
+        }
+
+        private void release() {
+            forward.forEach(Packet::release);
+            backward.forEach(Packet::release);
+        }
+    }
+
+    public static class Builder extends DiffStateTree.Builder<Diff> {
+        private WriteableCache cache;
+
+        /**
+         * Records a packet and the packets which undo it.
+         * Multiple updates at the same time are merged such that they are undone in reverse order.
+         * Takes ownership of all given packets.
+         */
+        public void put(int time, Packet forward, List<Packet> backward) {
+            Diff diff = map.get(time);
+            if (diff == null) {
+                diff = new Diff(new ArrayList<>(), new ArrayList<>());
+                map.put(time, diff);
+            }
+            diff.forward.add(forward);
+            diff.backward.addAll(0, backward);
+        }
+
+        @Override
+        public int build(WriteableCache cache) throws IOException {
+            this.cache = cache;
+            try {
+                return super.build(cache);
+            } finally {
+                this.cache = null;
+            }
+        }
+
+        @Override
+        protected void write(NetOutput out, Diff value, int time) throws IOException {
+            writePackets(out, value.forward);
+            writePackets(out, value.backward);
+        }
+
+        private void writePackets(NetOutput out, List<Packet> packets) throws IOException {
+            out.writeVarInt(packets.size());
+            for (Packet packet : packets) {
+                cache.writePacket(out, packet);
+                packet.release();
+            }
+        }
+
+        @Override
+        protected void discard(Diff value) {
+            value.release();
+        }
+
+        @Override
+        protected void writeState(NetOutput out, Diff value) throws IOException {
+            writeStatePackets(out, value.forward);
+            writeStatePackets(out, value.backward);
+        }
+
+        private void writeStatePackets(NetOutput out, List<Packet> packets) throws IOException {
+            out.writeVarInt(packets.size());
+            for (Packet packet : packets) {
+                Utils.writeCompressedPacket(out, packet);
+            }
+        }
+
+        @Override
+        protected Diff readState(PacketTypeRegistry registry, NetInput in) throws IOException {
+            return new Diff(readStatePackets(registry, in), readStatePackets(registry, in));
+        }
+
+        private List<Packet> readStatePackets(PacketTypeRegistry registry, NetInput in) throws IOException {
+            int size = in.readVarInt();
+            List<Packet> packets = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                packets.add(Utils.readCompressedPacket(registry, in));
+            }
+            return packets;
+        }
+    }
+}
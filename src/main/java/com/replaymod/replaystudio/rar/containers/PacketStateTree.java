@@ -24,24 +24,67 @@ import com.github.steveice10.packetlib.io.NetOutput;
 import com.replaymod.replaystudio.protocol.Packet;
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.rar.PacketSink;
+import com.replaymod.replaystudio.rar.SeekMetrics;
+import com.replaymod.replaystudio.rar.cache.ReadableCache;
+import com.replaymod.replaystudio.rar.cache.WriteableCache;
+import com.replaymod.replaystudio.util.Utils;
 
 import java.io.IOException;
 
-import static com.replaymod.replaystudio.util.Utils.readCompressedPacket;
-import static com.replaymod.replaystudio.util.Utils.writeCompressedPacket;
-
 public class PacketStateTree extends FullStateTree<Packet>  {
 
     private final PacketTypeRegistry registry;
+    private final String label;
+    private ReadableCache cache;
 
     public PacketStateTree(PacketTypeRegistry registry, int index) {
+        this(registry, index, null);
+    }
+
+    /**
+     * @param label Label under which this tree's work is reported to {@link SeekMetrics}, may be {@code null}
+     */
+    public PacketStateTree(PacketTypeRegistry registry, int index, String label) {
         super(index);
         this.registry = registry;
+        this.label = label;
+    }
+
+    @Override
+    public void load(PacketSink sink, ReadableCache cache) throws IOException {
+        this.cache = cache;
+        super.load(sink, cache);
+    }
+
+    @Override
+    public void unload(PacketSink sink, ReadableCache cache) throws IOException {
+        super.unload(sink, cache);
+        this.cache = null;
+    }
+
+    @Override
+    public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.PACKETS, label);
+        try {
+            super.play(sink, currentTimeStamp, targetTime);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    @Override
+    public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.PACKETS, label);
+        try {
+            super.rewind(sink, currentTimeStamp, targetTime);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
     }
 
     @Override
     protected Packet read(NetInput in) throws IOException {
-        return readCompressedPacket(registry, in);
+        return cache.readPacket(registry, in);
     }
 
     @Override
@@ -55,9 +98,21 @@ public class PacketStateTree extends FullStateTree<Packet>  {
     }
 
     public static class Builder extends FullStateTree.Builder<Packet> {
+        private WriteableCache cache;
+
+        @Override
+        public int build(WriteableCache cache) throws IOException {
+            this.cache = cache;
+            try {
+                return super.build(cache);
+            } finally {
+                this.cache = null;
+            }
+        }
+
         @Override
         protected void write(NetOutput out, Packet value, int time) throws IOException {
-            writeCompressedPacket(out, value);
+            cache.writePacket(out, value);
             value.release();
         }
 
@@ -65,5 +120,15 @@ public class PacketStateTree extends FullStateTree<Packet>  {
         protected void discard(Packet value) {
             value.release();
         }
+
+        @Override
+        protected void writeState(NetOutput out, Packet value) throws IOException {
+            Utils.writeCompressedPacket(out, value);
+        }
+
+        @Override
+        protected Packet readState(PacketTypeRegistry registry, NetInput in) throws IOException {
+            return Utils.readCompressedPacket(registry, in);
+        }
     }
 }
@@ -21,6 +21,7 @@ package com.replaymod.replaystudio.rar.containers;
 
 import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.rar.PacketSink;
 import com.replaymod.replaystudio.rar.RandomAccessState;
 import com.replaymod.replaystudio.rar.cache.ReadableCache;
@@ -72,6 +73,37 @@ public abstract class StateTree<T> implements RandomAccessState {
             }
         }
 
+        /**
+         * Writes the values of this builder (without consuming them) such that an equivalent builder can later be
+         * restored via {@link #readState(PacketTypeRegistry, NetInput)}, e.g. to resume an interrupted analysis.
+         * Only supported by builders which override {@link #writeState(NetOutput, Object)}.
+         */
+        public void writeState(NetOutput out) throws IOException {
+            out.writeVarInt(map.size());
+            for (Map.Entry<Integer, T> entry : map.entrySet()) {
+                out.writeVarInt(entry.getKey());
+                writeState(out, entry.getValue());
+            }
+        }
+
+        /**
+         * Adds the values written by {@link #writeState(NetOutput)} to this builder.
+         */
+        public void readState(PacketTypeRegistry registry, NetInput in) throws IOException {
+            for (int i = in.readVarInt(); i > 0; i--) {
+                int time = in.readVarInt();
+                put(time, readState(registry, in));
+            }
+        }
+
+        protected void writeState(NetOutput out, T value) throws IOException {
+            throw new UnsupportedOperationException(getClass() + " does not support saving its state");
+        }
+
+        protected T readState(PacketTypeRegistry registry, NetInput in) throws IOException {
+            throw new UnsupportedOperationException(getClass() + " does not support restoring its state");
+        }
+
         public int build(WriteableCache cache) throws IOException {
             WriteableCache.Deferred out = cache.deferred();
             out.writeVarInt(map.size());
@@ -20,39 +20,109 @@
 package com.replaymod.replaystudio.rar.containers;
 
 import com.github.steveice10.packetlib.io.NetInput;
-import com.replaymod.replaystudio.lib.guava.collect.ListMultimap;
-import com.replaymod.replaystudio.lib.guava.collect.Multimaps;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
 import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.protocol.packets.PacketChunkData;
 import com.replaymod.replaystudio.protocol.registry.DimensionType;
 import com.replaymod.replaystudio.rar.PacketSink;
 import com.replaymod.replaystudio.rar.RandomAccessState;
+import com.replaymod.replaystudio.rar.RegionOfInterest;
+import com.replaymod.replaystudio.rar.SeekMetrics;
 import com.replaymod.replaystudio.rar.cache.ReadableCache;
 import com.replaymod.replaystudio.rar.cache.WriteableCache;
 import com.replaymod.replaystudio.rar.state.Chunk;
 import com.replaymod.replaystudio.rar.state.Entity;
 import com.replaymod.replaystudio.rar.state.TransientThing;
 import com.replaymod.replaystudio.rar.state.Weather;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TransientThings implements RandomAccessState {
-
-    private final TreeMap<Integer, Collection<TransientThing>> thingSpawns = new TreeMap<>();
-    private final TreeMap<Integer, Collection<TransientThing>> thingDespawns = new TreeMap<>();
+    private static final Logger LOGGER = Logger.getLogger(TransientThings.class.getName());
+
+    private static final int TYPE_ENTITY = 1;
+    private static final int TYPE_CHUNK = 2;
+    private static final int TYPE_WEATHER = 3;
+
+    /**
+     * Maximum amount of despawned things whose inner state (block changes, entity locations, etc.) we keep around, so
+     * scrubbing back and forth over their spawn/despawn time does not require re-reading it from the cache every time.
+     */
+    private static final int RETIRED_CACHE_SIZE = 1024;
+
+    /**
+     * Maximum amount of things which have been decoded in the background by {@link #prefetch} but not yet activated.
+     */
+    private static final int MAX_PREFETCHED = 512;
+
+    /**
+     * Maximum amount of packets the client accepts in a single bundle.
+     */
+    private static final int MAX_BUNDLE_SIZE = 4096;
+
+    /**
+     * Size of the cells of the spatial index, as a power of two, in chunks.
+     */
+    private static final int GRID_SHIFT = 4;
+    /**
+     * Things which cover more than this amount of cells are not put into the spatial index, they are instead checked
+     * every time the region of interest changes.
+     */
+    private static final int MAX_CELLS_PER_THING = 16;
+
+    // Compact records of all things in this world, indexed by record id.
+    // The things themselves are only read from the cache once they become active.
+    private byte[] types;
+    private int[] spawnTimes;
+    private int[] despawnTimes;
+    private int[] offsets;
+    // Bounds of each record, in chunk coordinates, as consecutive {minX, minZ, maxX, maxZ}
+    private int[] bounds;
+
+    // Spatial index of record ids by (GRID_SHIFT-sized) cell of chunks, only populated if a region is set
+    private Long2ObjectMap<int[]> grid;
+    private int[] ungriddedThings;
+    private RegionOfInterest region;
+
+    // Record ids, sorted by spawn/despawn time, packed as (time << 32 | id)
+    private long[] thingSpawns;
+    private long[] thingDespawns;
 
     // Keep track of currently active things (optimization)
     private int activeThingsTime = -1;
-    private final List<TransientThing> activeThings = new LinkedList<>();
+    private final Int2ObjectLinkedOpenHashMap<TransientThing> activeThings = new Int2ObjectLinkedOpenHashMap<>();
+
+    // Recently despawned things, which may still have their inner state loaded, in least-recently-used order
+    private final Int2ObjectLinkedOpenHashMap<TransientThing> retiredThings = new Int2ObjectLinkedOpenHashMap<>();
+
+    // Things decoded ahead of time on a background thread, guarded by `prefetchedThings` itself.
+    // The generation is incremented on unload, so in-flight prefetch tasks know to discard their results.
+    private final Int2ObjectMap<TransientThing> prefetchedThings = new Int2ObjectOpenHashMap<>();
+    private int prefetchGeneration;
+    private CompletableFuture<Void> prefetchTask;
+
+    private boolean interpolateEntities;
 
     private final PacketTypeRegistry registry;
     private final int index;
@@ -67,33 +137,237 @@ public class TransientThings implements RandomAccessState {
     public void load(PacketSink sink, ReadableCache cache) throws IOException {
         this.cache = cache;
 
+        ByteArrayList types = new ByteArrayList();
+        IntArrayList spawnTimes = new IntArrayList();
+        IntArrayList despawnTimes = new IntArrayList();
+        IntArrayList offsets = new IntArrayList();
+        IntArrayList bounds = new IntArrayList();
+
         NetInput in = cache.seek(index);
-        ListMultimap<Integer, TransientThing> thingSpawns = Multimaps.newListMultimap(this.thingSpawns, ArrayList::new);
-        ListMultimap<Integer, TransientThing> thingDespawns = Multimaps.newListMultimap(this.thingDespawns, ArrayList::new);
-        things: while (true) {
-            TransientThing trackedThing;
-            switch (in.readVarInt()) {
-                case 0: break things;
-                case 1: trackedThing = new Entity(registry, in); break;
-                case 2: trackedThing = new Chunk(registry, in); break;
-                case 3: trackedThing = new Weather(registry, in); break;
+        while (true) {
+            int type = in.readVarInt();
+            if (type == 0) {
+                break;
+            }
+            if (in.readBoolean()) {
+                for (int i = 0; i < 4; i++) {
+                    bounds.add(in.readVarInt());
+                }
+            } else {
+                bounds.add(Integer.MIN_VALUE);
+                bounds.add(Integer.MIN_VALUE);
+                bounds.add(Integer.MAX_VALUE);
+                bounds.add(Integer.MAX_VALUE);
+            }
+            int offset = cache.index();
+            int spawnTime = in.readVarInt();
+            int despawnTime = in.readVarInt();
+            switch (type) {
+                case TYPE_ENTITY: Entity.skipHeader(in); break;
+                case TYPE_CHUNK: Chunk.skipHeader(in); break;
+                case TYPE_WEATHER: TransientThing.skipHeader(in); break;
                 default: throw new IOException("Invalid transient thing id.");
             }
-            thingSpawns.put(trackedThing.spawnTime, trackedThing);
-            thingDespawns.put(trackedThing.despawnTime, trackedThing);
+            types.add((byte) type);
+            spawnTimes.add(spawnTime);
+            despawnTimes.add(despawnTime);
+            offsets.add(offset);
+        }
+
+        this.types = types.toByteArray();
+        this.spawnTimes = spawnTimes.toIntArray();
+        this.despawnTimes = despawnTimes.toIntArray();
+        this.offsets = offsets.toIntArray();
+        this.bounds = bounds.toIntArray();
+
+        int count = this.types.length;
+        thingSpawns = new long[count];
+        thingDespawns = new long[count];
+        for (int id = 0; id < count; id++) {
+            thingSpawns[id] = (long) this.spawnTimes[id] << 32 | id;
+            thingDespawns[id] = (long) this.despawnTimes[id] << 32 | id;
         }
+        Arrays.sort(thingSpawns);
+        Arrays.sort(thingDespawns);
     }
 
     @Override
     public void unload(PacketSink sink, ReadableCache cache) throws IOException {
-        for (TransientThing activeThing : activeThings) {
+        for (TransientThing activeThing : activeThings.values()) {
             activeThing.unload(sink, cache);
+            activeThing.discardState(sink, cache);
         }
         activeThings.clear();
         activeThingsTime = -1;
 
-        thingSpawns.clear();
-        thingDespawns.clear();
+        for (TransientThing retiredThing : retiredThings.values()) {
+            retiredThing.discardState(sink, cache);
+        }
+        retiredThings.clear();
+
+        List<TransientThing> prefetched;
+        synchronized (prefetchedThings) {
+            prefetchGeneration++;
+            prefetched = new ArrayList<>(prefetchedThings.values());
+            prefetchedThings.clear();
+        }
+        for (TransientThing prefetchedThing : prefetched) {
+            prefetchedThing.discardState(Packet::release, cache);
+        }
+        prefetchTask = null;
+
+        types = null;
+        spawnTimes = null;
+        despawnTimes = null;
+        offsets = null;
+        bounds = null;
+        thingSpawns = null;
+        thingDespawns = null;
+        grid = null;
+        ungriddedThings = null;
+    }
+
+    /**
+     * Returns the position in the given sorted array of the first record with a time greater than the given time.
+     */
+    private static int firstAfter(long[] sortedThings, int time) {
+        int pos = Arrays.binarySearch(sortedThings, ((long) time << 32) | 0xffffffffL);
+        return pos >= 0 ? pos + 1 : -pos - 1;
+    }
+
+    private boolean inRegion(int id) {
+        if (region == null) {
+            return true;
+        }
+        int i = id * 4;
+        return region.intersects(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]);
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return (long) cellX << 32 | (cellZ & 0xffffffffL);
+    }
+
+    private void buildGrid() {
+        Long2ObjectMap<IntArrayList> cells = new Long2ObjectOpenHashMap<>();
+        IntArrayList ungridded = new IntArrayList();
+        for (int id = 0; id < types.length; id++) {
+            int i = id * 4;
+            long minX = bounds[i] >> GRID_SHIFT, minZ = bounds[i + 1] >> GRID_SHIFT;
+            long maxX = bounds[i + 2] >> GRID_SHIFT, maxZ = bounds[i + 3] >> GRID_SHIFT;
+            if ((maxX - minX + 1) * (maxZ - minZ + 1) > MAX_CELLS_PER_THING) {
+                ungridded.add(id);
+                continue;
+            }
+            for (int x = (int) minX; x <= maxX; x++) {
+                for (int z = (int) minZ; z <= maxZ; z++) {
+                    cells.computeIfAbsent(cellKey(x, z), k -> new IntArrayList()).add(id);
+                }
+            }
+        }
+        grid = new Long2ObjectOpenHashMap<>(cells.size());
+        for (Long2ObjectMap.Entry<IntArrayList> entry : cells.long2ObjectEntrySet()) {
+            grid.put(entry.getLongKey(), entry.getValue().toIntArray());
+        }
+        ungriddedThings = ungridded.toIntArray();
+    }
+
+    /**
+     * Restricts this container to things which are at least partially within the given region, any other things are
+     * despawned (or not spawned to begin with).
+     * Things which were outside the previous region but are within the new one are spawned and brought up to date.
+     *
+     * @param region The new region, or {@code null} to remove any restriction
+     */
+    public void setRegionOfInterest(PacketSink sink, RegionOfInterest region) throws IOException {
+        if (Objects.equals(this.region, region)) {
+            return;
+        }
+        this.region = region;
+        if (types == null || activeThingsTime == -1) {
+            return; // not loaded or nothing active, will be taken into account when things are activated
+        }
+        int time = activeThingsTime;
+
+        ObjectIterator<Int2ObjectMap.Entry<TransientThing>> activeIter = Int2ObjectMaps.fastIterator(activeThings);
+        while (activeIter.hasNext()) {
+            Int2ObjectMap.Entry<TransientThing> entry = activeIter.next();
+            int id = entry.getIntKey();
+            if (!inRegion(id)) {
+                TransientThing thing = entry.getValue();
+                activeIter.remove();
+                retire(sink, id, thing);
+            }
+        }
+
+        if (region == null) {
+            for (int i = 0, end = firstAfter(thingSpawns, time); i < end; i++) {
+                activateInRegion(sink, (int) thingSpawns[i], time);
+            }
+        } else {
+            if (grid == null) {
+                buildGrid();
+            }
+            for (int x = region.getMinX() >> GRID_SHIFT; x <= region.getMaxX() >> GRID_SHIFT; x++) {
+                for (int z = region.getMinZ() >> GRID_SHIFT; z <= region.getMaxZ() >> GRID_SHIFT; z++) {
+                    int[] ids = grid.get(cellKey(x, z));
+                    if (ids != null) {
+                        for (int id : ids) {
+                            activateInRegion(sink, id, time);
+                        }
+                    }
+                }
+            }
+            for (int id : ungriddedThings) {
+                activateInRegion(sink, id, time);
+            }
+        }
+    }
+
+    private void activateInRegion(PacketSink sink, int id, int time) throws IOException {
+        if (spawnTimes[id] > time || despawnTimes[id] <= time || activeThings.containsKey(id) || !inRegion(id)) {
+            return;
+        }
+        activate(sink, id);
+        activeThings.get(id).play(sink, -1, time);
+    }
+
+    private TransientThing readThing(int id) throws IOException {
+        return readThing(registry, cache, types[id], offsets[id]);
+    }
+
+    private static TransientThing readThing(PacketTypeRegistry registry, ReadableCache cache, byte type, int offset) throws IOException {
+        NetInput in = cache.seek(offset);
+        switch (type) {
+            case TYPE_ENTITY: return new Entity(registry, in);
+            case TYPE_CHUNK: return new Chunk(registry, in);
+            case TYPE_WEATHER: return new Weather(registry, in);
+            default: throw new IOException("Invalid transient thing id.");
+        }
+    }
+
+    private void activate(PacketSink sink, int id) throws IOException {
+        TransientThing thing = retiredThings.remove(id);
+        if (thing == null) {
+            synchronized (prefetchedThings) {
+                thing = prefetchedThings.remove(id);
+            }
+        }
+        if (thing == null) {
+            thing = readThing(id);
+        }
+        if (thing instanceof Entity) {
+            ((Entity) thing).setInterpolate(interpolateEntities);
+        }
+        thing.load(sink, cache);
+        activeThings.put(id, thing);
+    }
+
+    private void retire(PacketSink sink, int id, TransientThing thing) throws IOException {
+        thing.unload(sink, cache);
+        retiredThings.putAndMoveToLast(id, thing);
+        while (retiredThings.size() > RETIRED_CACHE_SIZE) {
+            retiredThings.removeFirst().discardState(Packet::release, cache);
+        }
     }
 
     private void computeActiveThings(int time) throws IOException {
@@ -104,17 +378,17 @@ public class TransientThings implements RandomAccessState {
         // Slow path, this should almost never be required for normal operation
         // unless the client state is completely reset.
 
-        for (TransientThing activeThing : activeThings) {
-            activeThing.unload(Packet::release, cache);
+        ObjectIterator<Int2ObjectMap.Entry<TransientThing>> activeIter = Int2ObjectMaps.fastIterator(activeThings);
+        while (activeIter.hasNext()) {
+            Int2ObjectMap.Entry<TransientThing> entry = activeIter.next();
+            retire(Packet::release, entry.getIntKey(), entry.getValue());
         }
         activeThings.clear();
 
-        for (Collection<TransientThing> things : thingSpawns.subMap(-1, false, time, true).values()) {
-            for (TransientThing thing : things) {
-                if (thing.despawnTime > time) {
-                    thing.load(Packet::release, cache);
-                    activeThings.add(thing);
-                }
+        for (int i = firstAfter(thingSpawns, -1), end = firstAfter(thingSpawns, time); i < end; i++) {
+            int id = (int) thingSpawns[i];
+            if (despawnTimes[id] > time && inRegion(id)) {
+                activate(Packet::release, id);
             }
         }
 
@@ -123,59 +397,226 @@ public class TransientThings implements RandomAccessState {
 
     @Override
     public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
-        computeActiveThings(currentTimeStamp);
-
-        Iterator<TransientThing> activeIter = activeThings.iterator();
-        while (activeIter.hasNext()) {
-            TransientThing thing = activeIter.next();
-            if (thing.despawnTime <= targetTime) {
-                thing.unload(sink, cache);
-                activeIter.remove();
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.TRANSIENT_THINGS);
+        try {
+            computeActiveThings(currentTimeStamp);
+
+            ObjectIterator<Int2ObjectMap.Entry<TransientThing>> activeIter = Int2ObjectMaps.fastIterator(activeThings);
+            while (activeIter.hasNext()) {
+                Int2ObjectMap.Entry<TransientThing> entry = activeIter.next();
+                int id = entry.getIntKey();
+                if (despawnTimes[id] <= targetTime) {
+                    TransientThing thing = entry.getValue();
+                    activeIter.remove();
+                    retire(sink, id, thing);
+                }
             }
-        }
 
-        for (Collection<TransientThing> things : thingSpawns.subMap(currentTimeStamp, false, targetTime, true).values()) {
-            for (TransientThing thing : things) {
-                if (thing.despawnTime > targetTime) {
-                    thing.load(sink, cache);
-                    activeThings.add(thing);
+            for (int i = firstAfter(thingSpawns, currentTimeStamp), end = firstAfter(thingSpawns, targetTime); i < end; i++) {
+                int id = (int) thingSpawns[i];
+                if (despawnTimes[id] > targetTime && inRegion(id)) {
+                    activate(sink, id);
                 }
             }
-        }
 
-        activeThingsTime = targetTime;
+            activeThingsTime = targetTime;
 
-        for (TransientThing thing : activeThings) {
-            thing.play(sink, currentTimeStamp, targetTime);
+            List<Packet> movements = interpolateEntities ? new ArrayList<>() : null;
+            PacketSink movementSink = movements != null ? movements::add : sink;
+            for (TransientThing thing : activeThings.values()) {
+                thing.play(thing instanceof Entity ? movementSink : sink, currentTimeStamp, targetTime);
+            }
+            if (movements != null) {
+                sendMovements(sink, movements);
+            }
+        } finally {
+            SeekMetrics.exit(metrics);
         }
     }
 
     @Override
     public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
-        computeActiveThings(currentTimeStamp);
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.TRANSIENT_THINGS);
+        try {
+            computeActiveThings(currentTimeStamp);
+
+            ObjectIterator<Int2ObjectMap.Entry<TransientThing>> activeIter = Int2ObjectMaps.fastIterator(activeThings);
+            while (activeIter.hasNext()) {
+                Int2ObjectMap.Entry<TransientThing> entry = activeIter.next();
+                int id = entry.getIntKey();
+                if (spawnTimes[id] > targetTime) {
+                    TransientThing thing = entry.getValue();
+                    activeIter.remove();
+                    retire(sink, id, thing);
+                }
+            }
 
-        Iterator<TransientThing> activeIter = activeThings.iterator();
-        while (activeIter.hasNext()) {
-            TransientThing thing = activeIter.next();
-            if (thing.spawnTime > targetTime) {
-                thing.unload(sink, cache);
-                activeIter.remove();
+            for (int i = firstAfter(thingDespawns, targetTime), end = firstAfter(thingDespawns, currentTimeStamp); i < end; i++) {
+                int id = (int) thingDespawns[i];
+                if (spawnTimes[id] <= targetTime && inRegion(id)) {
+                    activate(sink, id);
+                }
+            }
+
+            activeThingsTime = targetTime;
+
+            List<Packet> movements = interpolateEntities ? new ArrayList<>() : null;
+            PacketSink movementSink = movements != null ? movements::add : sink;
+            for (TransientThing thing : activeThings.values()) {
+                thing.rewind(thing instanceof Entity ? movementSink : sink, currentTimeStamp, targetTime);
             }
+            if (movements != null) {
+                sendMovements(sink, movements);
+            }
+        } finally {
+            SeekMetrics.exit(metrics);
         }
+    }
 
-        for (Collection<TransientThing> things : thingDespawns.subMap(targetTime, false, currentTimeStamp, true).values()) {
-            for (TransientThing thing : things) {
-                if (thing.spawnTime <= targetTime) {
-                    thing.load(sink, cache);
-                    activeThings.add(thing);
+    /**
+     * Sends the interpolated entity movements collected during a seek. These are accounted for as
+     * {@link SeekMetrics.Container#LOCATIONS}, like the locations of entities which are not interpolated.
+     */
+    private void sendMovements(PacketSink sink, List<Packet> movements) {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.LOCATIONS);
+        try {
+            sendBundled(sink, movements);
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    /**
+     * Sends the given packets wrapped in bundles (where supported), such that the client applies all of them in the
+     * same tick instead of possibly spreading them over multiple frames.
+     */
+    private void sendBundled(PacketSink sink, List<Packet> packets) {
+        if (packets.size() <= 1 || registry.olderThan(ProtocolVersion.v1_19_4)) {
+            packets.forEach(sink);
+            return;
+        }
+        for (int i = 0; i < packets.size(); i += MAX_BUNDLE_SIZE) {
+            sink.accept(new Packet(registry, PacketType.Bundle));
+            packets.subList(i, Math.min(packets.size(), i + MAX_BUNDLE_SIZE)).forEach(sink);
+            sink.accept(new Packet(registry, PacketType.Bundle));
+        }
+    }
+
+    /**
+     * Sets whether entity locations should be interpolated between their recorded locations, with only the entities
+     * which actually moved being updated on each seek.
+     * @see Entity#setInterpolate(boolean)
+     */
+    public void setInterpolateEntities(boolean interpolateEntities) {
+        this.interpolateEntities = interpolateEntities;
+        for (TransientThing thing : activeThings.values()) {
+            if (thing instanceof Entity) {
+                ((Entity) thing).setInterpolate(interpolateEntities);
+            }
+        }
+    }
+
+    /**
+     * Decodes, on the given executor, the things which will become active when seeking from the given time to the
+     * given target time (i.e. those spawning in between when playing, or those despawning in between when rewinding),
+     * so a subsequent call to {@link #play}/{@link #rewind} can activate them without having to read them from the
+     * cache first.
+     * Previously prefetched things which are no longer in the given range are discarded.
+     * Only one prefetch task is run at a time, if the previous one has not yet completed, this call is a no-op.
+     * Must be called from the same thread as all other methods.
+     */
+    public void prefetch(Executor executor, int currentTime, int targetTime) throws IOException {
+        if (types == null || currentTime == targetTime) {
+            return;
+        }
+        if (prefetchTask != null && !prefetchTask.isDone()) {
+            return;
+        }
+        boolean forward = targetTime > currentTime;
+        int from = Math.min(currentTime, targetTime);
+        int to = Math.max(currentTime, targetTime);
+        int[] times = forward ? spawnTimes : despawnTimes;
+
+        List<TransientThing> stale = new ArrayList<>();
+        int capacity;
+        synchronized (prefetchedThings) {
+            ObjectIterator<Int2ObjectMap.Entry<TransientThing>> iter = Int2ObjectMaps.fastIterator(prefetchedThings);
+            while (iter.hasNext()) {
+                Int2ObjectMap.Entry<TransientThing> entry = iter.next();
+                int time = times[entry.getIntKey()];
+                if (time <= from || time > to) {
+                    stale.add(entry.getValue());
+                    iter.remove();
                 }
             }
+            capacity = MAX_PREFETCHED - prefetchedThings.size();
+        }
+        for (TransientThing thing : stale) {
+            thing.discardState(Packet::release, cache);
         }
 
-        activeThingsTime = targetTime;
+        long[] sortedThings = forward ? thingSpawns : thingDespawns;
+        IntArrayList ids = new IntArrayList();
+        for (int i = firstAfter(sortedThings, from), end = firstAfter(sortedThings, to); i < end && ids.size() < capacity; i++) {
+            int id = (int) sortedThings[i];
+            if (activeThings.containsKey(id) || retiredThings.containsKey(id) || !inRegion(id)) {
+                continue;
+            }
+            synchronized (prefetchedThings) {
+                if (prefetchedThings.containsKey(id)) {
+                    continue;
+                }
+            }
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
 
-        for (TransientThing thing : activeThings) {
-            thing.rewind(sink, currentTimeStamp, targetTime);
+        // Captured here, these are only ever replaced (never modified) on the main thread
+        byte[] types = this.types;
+        int[] offsets = this.offsets;
+        int generation;
+        synchronized (prefetchedThings) {
+            generation = prefetchGeneration;
+        }
+        ReadableCache fork = cache.fork();
+        try {
+            prefetchTask = CompletableFuture.runAsync(() -> {
+                try {
+                    for (int id : ids) {
+                        TransientThing thing = readThing(registry, fork, types[id], offsets[id]);
+                        boolean stored = false;
+                        try {
+                            thing.prefetch(fork);
+                            synchronized (prefetchedThings) {
+                                if (generation == prefetchGeneration) {
+                                    prefetchedThings.put(id, thing);
+                                    stored = true;
+                                }
+                            }
+                        } finally {
+                            if (!stored) { // failed or already unloaded
+                                thing.discardState(Packet::release, fork);
+                            }
+                        }
+                        if (!stored) {
+                            break;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    fork.release();
+                }
+            }, executor).whenComplete((result, t) -> {
+                if (t != null) {
+                    LOGGER.log(Level.WARNING, "Failed to prefetch transient things:", t);
+                }
+            });
+        } catch (Throwable t) {
+            fork.release();
+            throw t;
         }
     }
 
@@ -200,12 +641,26 @@ public class TransientThings implements RandomAccessState {
             return chunks;
         }
 
+        /**
+         * Returns whether no things have been added to this builder yet.
+         */
+        public boolean isEmpty() {
+            return entities.isEmpty() && chunks.isEmpty() && weather.isEmpty() && indexOut.getBuf().readableBytes() == 0;
+        }
+
         public Entity.Builder newEntity(int time, int entityId) throws IOException {
             return newTransientThing(entities, time, entityId, new Entity.Builder(registry, entityId));
         }
 
         public Chunk.Builder newChunk(int time, PacketChunkData.Column column) throws IOException {
-            return newTransientThing(chunks, time, column.coordToLong(), new Chunk.Builder(registry, dimensionType, column));
+            return newChunk(time, column, null);
+        }
+
+        /**
+         * @see Chunk.Builder#Builder(PacketTypeRegistry, DimensionType, PacketChunkData.Column, Packet)
+         */
+        public Chunk.Builder newChunk(int time, PacketChunkData.Column column, Packet packet) throws IOException {
+            return newTransientThing(chunks, time, column.coordToLong(), new Chunk.Builder(registry, dimensionType, column, packet));
         }
 
         public Weather.Builder newWeather(int time) throws IOException {
@@ -260,15 +715,22 @@ public class TransientThings implements RandomAccessState {
         private void commitTransientThing(int time, TransientThing.Builder thing) throws IOException {
             int id;
             if (thing instanceof Entity.Builder) {
-                id = 1;
+                id = TYPE_ENTITY;
             } else if (thing instanceof Chunk.Builder) {
-                id = 2;
+                id = TYPE_CHUNK;
             } else if (thing instanceof Weather.Builder) {
-                id = 3;
+                id = TYPE_WEATHER;
             } else {
                 throw new IllegalArgumentException("Unsupported type of thing: " + thing.getClass());
             }
             indexOut.writeByte(id);
+            int[] bounds = thing.getChunkBounds();
+            indexOut.writeBoolean(bounds != null);
+            if (bounds != null) {
+                for (int bound : bounds) {
+                    indexOut.writeVarInt(bound);
+                }
+            }
             thing.setDespawnTime(time);
             thing.build(indexOut, cache);
         }
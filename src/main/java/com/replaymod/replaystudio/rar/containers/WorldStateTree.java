@@ -34,6 +34,8 @@ import com.replaymod.replaystudio.protocol.packets.PacketConfigSelectKnownPacks;
 import com.replaymod.replaystudio.protocol.packets.PacketJoinGame;
 import com.replaymod.replaystudio.protocol.packets.PacketPlayerPositionRotation;
 import com.replaymod.replaystudio.rar.PacketSink;
+import com.replaymod.replaystudio.rar.RegionOfInterest;
+import com.replaymod.replaystudio.rar.SeekMetrics;
 import com.replaymod.replaystudio.rar.cache.ReadableCache;
 import com.replaymod.replaystudio.rar.cache.WriteableCache;
 import com.replaymod.replaystudio.rar.state.Replay;
@@ -45,12 +47,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class WorldStateTree extends StateTree<World> {
     private final PacketTypeRegistry registry;
     private final Replay replay;
     private ReadableCache cache;
     private World activeWorld;
+    private boolean interpolateEntities;
+    private RegionOfInterest region;
 
     public WorldStateTree(PacketTypeRegistry registry, Replay replay, int index) {
         super(index);
@@ -76,7 +81,10 @@ public class WorldStateTree extends StateTree<World> {
 
     @Override
     protected World read(NetInput in) throws IOException {
-        return new World(registry, in);
+        World world = new World(registry, in);
+        world.setInterpolateEntities(interpolateEntities);
+        world.setRegionOfInterest(Packet::release, region);
+        return world;
     }
 
     @Override
@@ -233,24 +241,67 @@ public class WorldStateTree extends StateTree<World> {
 
     @Override
     public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
-        World world = getWorldOrSwitch(sink, currentTimeStamp, targetTime);
-        if (world != null) {
-            world.play(sink, currentTimeStamp, targetTime);
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.WORLDS);
+        try {
+            World world = getWorldOrSwitch(sink, currentTimeStamp, targetTime);
+            if (world != null) {
+                world.play(sink, currentTimeStamp, targetTime);
+            }
+        } finally {
+            SeekMetrics.exit(metrics);
         }
     }
 
     @Override
     public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
-        World world = getWorldOrSwitch(sink, currentTimeStamp, targetTime);
-        if (world != null) {
-            world.rewind(sink, currentTimeStamp, targetTime);
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.WORLDS);
+        try {
+            World world = getWorldOrSwitch(sink, currentTimeStamp, targetTime);
+            if (world != null) {
+                world.rewind(sink, currentTimeStamp, targetTime);
+            }
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    /**
+     * @see TransientThings#setInterpolateEntities(boolean)
+     */
+    public void setInterpolateEntities(boolean interpolateEntities) {
+        this.interpolateEntities = interpolateEntities;
+        for (World world : map.values()) {
+            world.setInterpolateEntities(interpolateEntities);
+        }
+    }
+
+    /**
+     * Sets the region of interest of all worlds, immediately applying it to the currently active one.
+     * @see TransientThings#setRegionOfInterest(PacketSink, RegionOfInterest)
+     */
+    public void setRegionOfInterest(PacketSink sink, RegionOfInterest region) throws IOException {
+        this.region = region;
+        for (World world : map.values()) {
+            world.setRegionOfInterest(world == activeWorld ? sink : Packet::release, region);
+        }
+    }
+
+    /**
+     * Prefetches state of the currently active world.
+     * @see TransientThings#prefetch(Executor, int, int)
+     */
+    public void prefetch(Executor executor, int currentTime, int targetTime) throws IOException {
+        if (activeWorld != null) {
+            activeWorld.prefetch(executor, currentTime, targetTime);
         }
     }
 
     public static class Builder {
         private final PacketTypeRegistry registry;
         private final WriteableCache cache;
+        // Worlds are built as soon as the next one starts, so only the current one is kept around as a builder
         private final TreeBuilder builder = new TreeBuilder();
+        private int worldStart;
         public World.Builder world;
 
         public Builder(PacketTypeRegistry registry, WriteableCache cache) throws IOException {
@@ -259,34 +310,75 @@ public class WorldStateTree extends StateTree<World> {
         }
 
         public World.Builder newWorld(int time, World.Info info) throws IOException {
-            World.Builder builder = new World.Builder(registry, cache, info);
-            this.builder.put(time, world = builder);
-            return builder;
+            finishWorld(time);
+            worldStart = time;
+            return world = new World.Builder(registry, cache, info);
+        }
+
+        private void finishWorld(int time) throws IOException {
+            if (world == null) {
+                return;
+            }
+            ByteBuf buf = Unpooled.buffer();
+            try {
+                world.build(new ByteBufNetOutput(buf), time);
+                byte[] bytes = new byte[buf.readableBytes()];
+                buf.readBytes(bytes);
+                builder.put(worldStart, bytes);
+            } finally {
+                buf.release();
+            }
+            world = null;
+        }
+
+        /**
+         * Writes the state of this builder, such that it can be restored via {@link #readState(NetInput)}.
+         * Only supported while the current world does not yet have any transient things.
+         *
+         * @see World.Builder#writeState(NetOutput)
+         */
+        public void writeState(NetOutput out) throws IOException {
+            builder.writeState(out);
+            out.writeBoolean(world != null);
+            if (world != null) {
+                out.writeVarInt(worldStart);
+                world.writeState(out);
+            }
+        }
+
+        public void readState(NetInput in) throws IOException {
+            builder.readState(registry, in);
+            if (in.readBoolean()) {
+                worldStart = in.readVarInt();
+                world = World.Builder.readState(registry, cache, in);
+            }
         }
 
         public int build(int time) throws IOException {
-            builder.endTime = time;
+            finishWorld(time);
             return builder.build(cache);
         }
 
-        private static class TreeBuilder extends StateTree.Builder<World.Builder> {
-            private int endTime;
+        private static class TreeBuilder extends StateTree.Builder<byte[]> {
+            @Override
+            protected void write(NetOutput out, byte[] world, int time) throws IOException {
+                out.writeBytes(world);
+            }
 
             @Override
-            protected void write(NetOutput out, World.Builder world, int time) throws IOException {
-                Integer nextTime = map.higherKey(time);
-                world.build(out, nextTime != null ? nextTime : endTime);
+            protected void discard(byte[] world) {
+                // already built, nothing to release
             }
 
             @Override
-            protected void discard(World.Builder world) {
-                ByteBuf buf = Unpooled.buffer();
-                try {
-                    world.build(new ByteBufNetOutput(buf), 0);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                buf.release();
+            protected void writeState(NetOutput out, byte[] world) throws IOException {
+                out.writeVarInt(world.length);
+                out.writeBytes(world);
+            }
+
+            @Override
+            protected byte[] readState(PacketTypeRegistry registry, NetInput in) throws IOException {
+                return in.readBytes(in.readVarInt());
             }
         }
     }
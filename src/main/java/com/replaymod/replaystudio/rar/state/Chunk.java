@@ -21,6 +21,7 @@ package com.replaymod.replaystudio.rar.state;
 
 import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
+import com.replaymod.replaystudio.protocol.Packet;
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.protocol.packets.PacketChunkData;
 import com.replaymod.replaystudio.protocol.registry.DimensionType;
@@ -40,15 +41,18 @@ public class Chunk extends TransientThing implements RandomAccessState {
         this.blocks = new BlockStateTree(registry, in.readVarInt());
     }
 
+    public static void skipHeader(NetInput in) throws IOException {
+        TransientThing.skipHeader(in);
+        in.readVarInt(); // blocks
+    }
+
     @Override
-    public void load(PacketSink sink, ReadableCache cache) throws IOException {
-        super.load(sink, cache);
+    protected void loadState(PacketSink sink, ReadableCache cache) throws IOException {
         blocks.load(sink, cache);
     }
 
     @Override
-    public void unload(PacketSink sink, ReadableCache cache) throws IOException {
-        super.unload(sink, cache);
+    protected void unloadState(PacketSink sink, ReadableCache cache) throws IOException {
         blocks.unload(sink, cache);
     }
 
@@ -68,14 +72,31 @@ public class Chunk extends TransientThing implements RandomAccessState {
 
     public static class Builder extends TransientThing.Builder {
         public final BlockStateTree.Builder blocks;
+        private final int x, z;
 
         public Builder(PacketTypeRegistry registry, DimensionType dimensionType, PacketChunkData.Column column) throws IOException {
-            addSpawnPacket(PacketChunkData.load(column).write(registry));
+            this(registry, dimensionType, column, null);
+        }
+
+        /**
+         * @param packet The packet from which the column was read, used as is for the spawn packet if given. Must be
+         *               given if the column was read via {@link PacketChunkData#readBlocksOnly}. Ownership of it is
+         *               transferred to this builder.
+         */
+        public Builder(PacketTypeRegistry registry, DimensionType dimensionType, PacketChunkData.Column column, Packet packet) throws IOException {
+            this.x = column.x;
+            this.z = column.z;
+            addSpawnPacket(packet != null ? packet : PacketChunkData.load(column).write(registry));
             addDespawnPacket(PacketChunkData.unload(column.x, column.z).write(registry));
 
             blocks = new BlockStateTree.Builder(registry, dimensionType, column);
         }
 
+        @Override
+        public int[] getChunkBounds() {
+            return new int[] { x, z, x, z };
+        }
+
         @Override
         public void build(NetOutput out, WriteableCache cache) throws IOException {
             super.build(out, cache);
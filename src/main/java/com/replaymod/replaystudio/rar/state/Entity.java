@@ -27,6 +27,7 @@ import com.replaymod.replaystudio.protocol.packets.PacketEntityHeadLook;
 import com.replaymod.replaystudio.protocol.packets.PacketEntityTeleport;
 import com.replaymod.replaystudio.rar.PacketSink;
 import com.replaymod.replaystudio.rar.RandomAccessState;
+import com.replaymod.replaystudio.rar.SeekMetrics;
 import com.replaymod.replaystudio.rar.cache.ReadableCache;
 import com.replaymod.replaystudio.rar.cache.WriteableCache;
 import com.replaymod.replaystudio.rar.containers.LocationStateTree;
@@ -35,38 +36,108 @@ import com.replaymod.replaystudio.util.Location;
 import java.io.IOException;
 
 public class Entity extends TransientThing implements RandomAccessState {
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final int id;
     private final LocationStateTree locations;
 
+    private boolean interpolate;
+    // Quantized position (1/32 of a block) and rotation (1/256 of a turn) last sent while interpolating
+    private long sentX = UNKNOWN, sentY, sentZ;
+    private int sentYaw, sentPitch;
+
     public Entity(PacketTypeRegistry registry, NetInput in) throws IOException {
         super(registry, in);
 
-        int id = in.readVarInt();
+        int id = this.id = in.readVarInt();
         this.locations = LocationStateTree.withApply(in.readVarInt(), (sink, loc) -> {
             sink.accept(PacketEntityTeleport.write(registry, id, loc, false));
             sink.accept(PacketEntityHeadLook.write(registry, id, loc.getYaw()));
         });
     }
 
+    /**
+     * Sets whether the location of this entity should be interpolated between its recorded locations, instead of
+     * jumping to the most recent one.
+     * When interpolating, packets are only sent if the location changed noticeably (i.e. after quantizing it to the
+     * precision of the 1.8 protocol), so this is suitable for seeking at frame rate.
+     */
+    public void setInterpolate(boolean interpolate) {
+        this.interpolate = interpolate;
+        this.sentX = UNKNOWN;
+    }
+
+    private void sample(PacketSink sink, int targetTime) throws IOException {
+        SeekMetrics metrics = SeekMetrics.enter(SeekMetrics.Container.LOCATIONS);
+        try {
+            Location loc = locations.sample(targetTime);
+            if (loc != null) {
+                sample(sink, loc);
+            }
+        } finally {
+            SeekMetrics.exit(metrics);
+        }
+    }
+
+    private void sample(PacketSink sink, Location loc) throws IOException {
+        long x = (long) Math.floor(loc.getX() * 32);
+        long y = (long) Math.floor(loc.getY() * 32);
+        long z = (long) Math.floor(loc.getZ() * 32);
+        int yaw = (int) (loc.getYaw() * 256 / 360) & 0xff;
+        int pitch = (int) (loc.getPitch() * 256 / 360) & 0xff;
+        boolean moved = sentX != x || sentY != y || sentZ != z || sentPitch != pitch;
+        boolean rotated = sentX == UNKNOWN || sentYaw != yaw;
+        if (moved || rotated) {
+            sink.accept(PacketEntityTeleport.write(registry, id, loc, false));
+        }
+        if (rotated) {
+            sink.accept(PacketEntityHeadLook.write(registry, id, loc.getYaw()));
+        }
+        sentX = x;
+        sentY = y;
+        sentZ = z;
+        sentYaw = yaw;
+        sentPitch = pitch;
+    }
+
     @Override
     public void load(PacketSink sink, ReadableCache cache) throws IOException {
         super.load(sink, cache);
+        sentX = UNKNOWN;
+    }
+
+    public static void skipHeader(NetInput in) throws IOException {
+        TransientThing.skipHeader(in);
+        in.readVarInt(); // entity id
+        in.readVarInt(); // locations
+    }
+
+    @Override
+    protected void loadState(PacketSink sink, ReadableCache cache) throws IOException {
         locations.load(sink, cache);
     }
 
     @Override
-    public void unload(PacketSink sink, ReadableCache cache) throws IOException {
-        super.unload(sink, cache);
+    protected void unloadState(PacketSink sink, ReadableCache cache) throws IOException {
         locations.unload(sink, cache);
     }
 
     @Override
     public void play(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
-        locations.play(sink, currentTimeStamp, targetTime);
+        if (interpolate) {
+            sample(sink, targetTime);
+        } else {
+            locations.play(sink, currentTimeStamp, targetTime);
+        }
     }
 
     @Override
     public void rewind(PacketSink sink, int currentTimeStamp, int targetTime) throws IOException {
-        locations.rewind(sink, currentTimeStamp, targetTime);
+        if (interpolate) {
+            sample(sink, targetTime);
+        } else {
+            locations.rewind(sink, currentTimeStamp, targetTime);
+        }
     }
 
     public static class Builder extends TransientThing.Builder {
@@ -87,6 +158,11 @@ public class Entity extends TransientThing implements RandomAccessState {
             locations.put(time, loc);
         }
 
+        @Override
+        public int[] getChunkBounds() {
+            return locations.getChunkBounds();
+        }
+
         @Override
         public void build(NetOutput out, WriteableCache cache) throws IOException {
             super.build(out, cache);
@@ -25,23 +25,28 @@ import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVe
 import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
 import com.replaymod.replaystudio.rar.PacketSink;
 import com.replaymod.replaystudio.rar.RandomAccessState;
+import com.replaymod.replaystudio.rar.RegionOfInterest;
 import com.replaymod.replaystudio.rar.cache.ReadableCache;
 import com.replaymod.replaystudio.rar.cache.WriteableCache;
+import com.replaymod.replaystudio.rar.containers.PacketDiffStateTree;
 import com.replaymod.replaystudio.rar.containers.PacketStateTree;
 import com.replaymod.replaystudio.rar.containers.WorldStateTree;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 public class Replay implements RandomAccessState {
     private final PacketTypeRegistry registry;
     public final PacketStateTree features;
     public final PacketStateTree tags;
+    public final PacketDiffStateTree playerList;
     private final WorldStateTree world;
 
     public Replay(PacketTypeRegistry registry, NetInput in) throws IOException {
         this.registry = registry;
-        features = new PacketStateTree(registry, in.readVarInt());
-        tags = new PacketStateTree(registry, in.readVarInt());
+        features = new PacketStateTree(registry, in.readVarInt(), "features");
+        tags = new PacketStateTree(registry, in.readVarInt(), "tags");
+        playerList = new PacketDiffStateTree(registry, in.readVarInt(), "playerList");
         world = new WorldStateTree(registry, this, in.readVarInt());
     }
 
@@ -49,12 +54,14 @@ public class Replay implements RandomAccessState {
     public void load(PacketSink sink, ReadableCache cache) throws IOException {
         features.load(sink, cache);
         tags.load(sink, cache);
+        playerList.load(sink, cache);
         world.load(sink, cache);
     }
 
     @Override
     public void unload(PacketSink sink, ReadableCache cache) throws IOException {
         world.unload(sink, cache);
+        playerList.unload(sink, cache);
         tags.unload(sink, cache);
         features.unload(sink, cache);
     }
@@ -66,6 +73,7 @@ public class Replay implements RandomAccessState {
             features.play(sink, currentTimeStamp, targetTime);
         }
         tags.play(sink, currentTimeStamp, targetTime);
+        playerList.play(sink, currentTimeStamp, targetTime);
         world.play(sink, currentTimeStamp, targetTime);
     }
 
@@ -76,17 +84,42 @@ public class Replay implements RandomAccessState {
             features.rewind(sink, currentTimeStamp, targetTime);
         }
         tags.rewind(sink, currentTimeStamp, targetTime);
+        playerList.rewind(sink, currentTimeStamp, targetTime);
         world.rewind(sink, currentTimeStamp, targetTime);
     }
 
+    /**
+     * @see com.replaymod.replaystudio.rar.containers.TransientThings#setInterpolateEntities(boolean)
+     */
+    public void setInterpolateEntities(boolean interpolateEntities) {
+        world.setInterpolateEntities(interpolateEntities);
+    }
+
+    /**
+     * @see com.replaymod.replaystudio.rar.containers.TransientThings#setRegionOfInterest(PacketSink, RegionOfInterest)
+     */
+    public void setRegionOfInterest(PacketSink sink, RegionOfInterest region) throws IOException {
+        world.setRegionOfInterest(sink, region);
+    }
+
+    /**
+     * @see com.replaymod.replaystudio.rar.containers.TransientThings#prefetch(Executor, int, int)
+     */
+    public void prefetch(Executor executor, int currentTime, int targetTime) throws IOException {
+        world.prefetch(executor, currentTime, targetTime);
+    }
+
     public static class Builder {
+        private final PacketTypeRegistry registry;
         private final WriteableCache cache;
         public final PacketStateTree.Builder features = new PacketStateTree.Builder();
         public final PacketStateTree.Builder tags = new PacketStateTree.Builder();
+        public final PacketDiffStateTree.Builder playerList = new PacketDiffStateTree.Builder();
         private final WorldStateTree.Builder worlds;
         public World.Builder world;
 
         public Builder(PacketTypeRegistry registry, WriteableCache cache) throws IOException {
+            this.registry = registry;
             this.cache = cache;
             this.worlds = new WorldStateTree.Builder(registry, cache);
         }
@@ -95,9 +128,34 @@ public class Replay implements RandomAccessState {
             return world = worlds.newWorld(time, info);
         }
 
+        /**
+         * Writes the state of this builder, such that it can be restored via {@link #readState(NetInput)}.
+         * Only supported while the current world does not yet have any transient things.
+         *
+         * @see WorldStateTree.Builder#writeState(NetOutput)
+         */
+        public void writeState(NetOutput out) throws IOException {
+            features.writeState(out);
+            tags.writeState(out);
+            playerList.writeState(out);
+            worlds.writeState(out);
+        }
+
+        /**
+         * Restores the state written by {@link #writeState(NetOutput)}. Must be called on a new builder.
+         */
+        public void readState(NetInput in) throws IOException {
+            features.readState(registry, in);
+            tags.readState(registry, in);
+            playerList.readState(registry, in);
+            worlds.readState(in);
+            world = worlds.world;
+        }
+
         public void build(NetOutput out, int time) throws IOException {
             out.writeVarInt(features.build(cache));
             out.writeVarInt(tags.build(cache));
+            out.writeVarInt(playerList.build(cache));
             out.writeVarInt(worlds.build(time));
         }
     }
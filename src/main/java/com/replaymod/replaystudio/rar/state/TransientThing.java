@@ -30,6 +30,8 @@ import com.replaymod.replaystudio.rar.cache.ReadableCache;
 import com.replaymod.replaystudio.rar.cache.WriteableCache;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public abstract class TransientThing implements RandomAccessState {
     protected final PacketTypeRegistry registry;
@@ -37,6 +39,8 @@ public abstract class TransientThing implements RandomAccessState {
     public final int despawnTime;
     private final LazyPacketList spawnPackets;
     private final LazyPacketList despawnPackets;
+    private boolean stateLoaded;
+    private List<Packet> prefetchedSpawnPackets;
 
     public TransientThing(PacketTypeRegistry registry, NetInput in) throws IOException {
         this.registry = registry;
@@ -47,22 +51,89 @@ public abstract class TransientThing implements RandomAccessState {
         despawnPackets = new LazyPacketList(registry, in.readVarInt());
     }
 
+    /**
+     * Skips the remainder of a header written by {@link Builder#build}, following the spawn and despawn time.
+     */
+    public static void skipHeader(NetInput in) throws IOException {
+        in.readVarInt(); // spawn packets
+        in.readVarInt(); // despawn packets
+    }
+
+    /**
+     * Decodes the spawn packets and inner state of this thing ahead of time, such that a subsequent call to
+     * {@link #load} does not need to access the cache.
+     * May be called from a different thread than the one using this thing (as long as the thing is properly published
+     * to it afterwards), the given cache should then be a {@link ReadableCache#fork()}.
+     */
+    public void prefetch(ReadableCache cache) throws IOException {
+        if (prefetchedSpawnPackets == null) {
+            List<Packet> packets = new ArrayList<>();
+            spawnPackets.read(packets::add, cache);
+            prefetchedSpawnPackets = packets;
+        }
+        if (!stateLoaded) {
+            loadState(Packet::release, cache);
+            stateLoaded = true;
+        }
+    }
+
     @Override
     public void load(PacketSink sink, ReadableCache cache) throws IOException {
-        spawnPackets.read(sink, cache);
+        if (prefetchedSpawnPackets != null) {
+            prefetchedSpawnPackets.forEach(sink);
+            prefetchedSpawnPackets = null;
+        } else {
+            spawnPackets.read(sink, cache);
+        }
+        if (!stateLoaded) {
+            loadState(sink, cache);
+            stateLoaded = true;
+        }
     }
 
+    /**
+     * Sends the despawn packets of this thing.
+     * Any inner state stays loaded, so the thing can be cheaply re-activated, until {@link #discardState} is called.
+     */
     @Override
     public void unload(PacketSink sink, ReadableCache cache) throws IOException {
         despawnPackets.read(sink, cache);
     }
 
+    /**
+     * Drops any inner state loaded by {@link #load}, it will be re-loaded from the cache on the next call to it.
+     */
+    public void discardState(PacketSink sink, ReadableCache cache) throws IOException {
+        if (prefetchedSpawnPackets != null) {
+            prefetchedSpawnPackets.forEach(Packet::release);
+            prefetchedSpawnPackets = null;
+        }
+        if (stateLoaded) {
+            unloadState(sink, cache);
+            stateLoaded = false;
+        }
+    }
+
+    protected void loadState(PacketSink sink, ReadableCache cache) throws IOException {
+    }
+
+    protected void unloadState(PacketSink sink, ReadableCache cache) throws IOException {
+    }
+
     public static class Builder {
         private int spawnTime;
         private int despawnTime;
         public final LazyPacketList.Builder spawnPackets = new LazyPacketList.Builder();
         public final LazyPacketList.Builder despawnPackets = new LazyPacketList.Builder();
 
+        /**
+         * Returns the bounds, as {@code {minX, minZ, maxX, maxZ}} in chunk coordinates, of the area this thing was in
+         * during its lifetime, or {@code null} if it is not bound to a specific area.
+         */
+        public int[] getChunkBounds() {
+            return null;
+        }
+
         public void build(NetOutput out, WriteableCache cache) throws IOException {
             out.writeVarInt(spawnTime);
             out.writeVarInt(despawnTime);
@@ -30,6 +30,7 @@ import com.replaymod.replaystudio.protocol.registry.DimensionType;
 import com.replaymod.replaystudio.protocol.registry.Registries;
 import com.replaymod.replaystudio.rar.PacketSink;
 import com.replaymod.replaystudio.rar.RandomAccessState;
+import com.replaymod.replaystudio.rar.RegionOfInterest;
 import com.replaymod.replaystudio.rar.cache.ReadableCache;
 import com.replaymod.replaystudio.rar.cache.WriteableCache;
 import com.replaymod.replaystudio.rar.containers.PacketStateTree;
@@ -38,6 +39,7 @@ import com.replaymod.replaystudio.rar.containers.TransientThings;
 import java.io.IOException;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 
 import static java.util.Objects.requireNonNull;
 
@@ -59,12 +61,12 @@ public class World implements RandomAccessState {
     public World(PacketTypeRegistry registry, NetInput in) throws IOException {
         this.info = new Info(registry, in);
         this.transientThings = new TransientThings(registry, in.readVarInt());
-        this.viewPosition = new PacketStateTree(registry, in.readVarInt());
-        this.viewDistance = new PacketStateTree(registry, in.readVarInt());
-        this.simulationDistance = new PacketStateTree(registry, in.readVarInt());
-        this.worldTimes = new PacketStateTree(registry, in.readVarInt());
-        this.rainStrengths = new PacketStateTree(registry, in.readVarInt());
-        this.thunderStrengths = new PacketStateTree(registry, in.readVarInt());
+        this.viewPosition = new PacketStateTree(registry, in.readVarInt(), "viewPosition");
+        this.viewDistance = new PacketStateTree(registry, in.readVarInt(), "viewDistance");
+        this.simulationDistance = new PacketStateTree(registry, in.readVarInt(), "simulationDistance");
+        this.worldTimes = new PacketStateTree(registry, in.readVarInt(), "worldTimes");
+        this.rainStrengths = new PacketStateTree(registry, in.readVarInt(), "rainStrengths");
+        this.thunderStrengths = new PacketStateTree(registry, in.readVarInt(), "thunderStrengths");
     }
 
     @Override
@@ -111,6 +113,27 @@ public class World implements RandomAccessState {
         thunderStrengths.rewind(sink, currentTimeStamp, targetTime);
     }
 
+    /**
+     * @see TransientThings#setInterpolateEntities(boolean)
+     */
+    public void setInterpolateEntities(boolean interpolateEntities) {
+        transientThings.setInterpolateEntities(interpolateEntities);
+    }
+
+    /**
+     * @see TransientThings#setRegionOfInterest(PacketSink, RegionOfInterest)
+     */
+    public void setRegionOfInterest(PacketSink sink, RegionOfInterest region) throws IOException {
+        transientThings.setRegionOfInterest(sink, region);
+    }
+
+    /**
+     * @see TransientThings#prefetch(Executor, int, int)
+     */
+    public void prefetch(Executor executor, int currentTime, int targetTime) throws IOException {
+        transientThings.prefetch(executor, currentTime, targetTime);
+    }
+
     public static class Builder {
         private final WriteableCache cache;
         private final PacketTypeRegistry registry;
@@ -131,6 +154,35 @@ public class World implements RandomAccessState {
             transientThings = new TransientThings.Builder(registry, cache, info.dimensionType);
         }
 
+        /**
+         * Writes the state of this builder, such that it can be restored via
+         * {@link #readState(PacketTypeRegistry, WriteableCache, NetInput)}.
+         * Only supported for worlds which do not yet have any transient things (i.e. right after they were created).
+         */
+        public void writeState(NetOutput out) throws IOException {
+            if (!transientThings.isEmpty()) {
+                throw new IllegalStateException("Cannot save state of world with transient things");
+            }
+            info.write(registry, out);
+            viewPosition.writeState(out);
+            viewDistance.writeState(out);
+            simulationDistance.writeState(out);
+            worldTimes.writeState(out);
+            rainStrengths.writeState(out);
+            thunderStrengths.writeState(out);
+        }
+
+        public static Builder readState(PacketTypeRegistry registry, WriteableCache cache, NetInput in) throws IOException {
+            Builder builder = new Builder(registry, cache, new Info(registry, in));
+            builder.viewPosition.readState(registry, in);
+            builder.viewDistance.readState(registry, in);
+            builder.simulationDistance.readState(registry, in);
+            builder.worldTimes.readState(registry, in);
+            builder.rainStrengths.readState(registry, in);
+            builder.thunderStrengths.readState(registry, in);
+            return builder;
+        }
+
         public void build(NetOutput out, int time) throws IOException {
             info.write(registry, out);
             out.writeVarInt(transientThings.build(time));
@@ -22,6 +22,7 @@ import com.replaymod.replaystudio.lib.guava.base.Optional;
 import com.replaymod.replaystudio.data.Marker;
 import com.replaymod.replaystudio.data.ModInfo;
 import com.replaymod.replaystudio.data.ReplayAssetEntry;
+import com.replaymod.replaystudio.io.RawReplayInputStream;
 import com.replaymod.replaystudio.io.ReplayInputStream;
 import com.replaymod.replaystudio.io.ReplayOutputStream;
 import com.replaymod.replaystudio.pathing.PathingRegistry;
@@ -126,6 +127,20 @@ public interface ReplayFile extends Closeable {
 
     ReplayInputStream getPacketData(PacketTypeRegistry registry) throws IOException;
 
+    /**
+     * Returns the packet data exactly as stored in this replay, without any protocol conversion.
+     * @return The raw packet data or {@code null} if this replay has no packet data
+     * @see RawReplayInputStream
+     */
+    default RawReplayInputStream getRawPacketData() throws IOException {
+        Optional<InputStream> in = get("recording.tmcpr");
+        if (!in.isPresent()) {
+            return null;
+        }
+        ReplayMetaData metaData = getMetaData();
+        return new RawReplayInputStream(in.get(), metaData.getFileFormatVersion(), metaData.getRawProtocolVersionOr0());
+    }
+
     ReplayOutputStream writePacketData() throws IOException;
 
     Map<Integer, String> getResourcePackIndex() throws IOException;
@@ -21,6 +21,7 @@ package com.replaymod.replaystudio.stream;
 import com.replaymod.replaystudio.lib.guava.base.Supplier;
 import com.replaymod.replaystudio.lib.guava.collect.Lists;
 import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.filter.BatchStreamFilter;
 import com.replaymod.replaystudio.filter.StreamFilter;
 import com.replaymod.replaystudio.protocol.Packet;
 
@@ -30,6 +31,11 @@ import java.util.*;
 import static com.replaymod.replaystudio.lib.guava.base.Preconditions.checkNotNull;
 
 public abstract class AbstractPacketStream implements PacketStream {
+    /**
+     * Maximum amount of packets passed to a {@link BatchStreamFilter} at once.
+     * Also the amount of packets read ahead from the input if there are any batch filters.
+     */
+    private static final int BATCH_SIZE = 256;
 
     public static AbstractPacketStream of(Supplier<PacketData> supplier) {
         return new AbstractPacketStreamImpl(supplier);
@@ -114,90 +120,146 @@ public abstract class AbstractPacketStream implements PacketStream {
     private class StreamElement {
         private final FilterInfo filter;
         private final PacketStreamContext context = new PacketStreamContext(this);
-        private final Queue<PacketData> inserted = new LinkedList<>();
+        private final ArrayDeque<PacketData> inserted = new ArrayDeque<>();
+        /**
+         * Packets waiting to be processed by this element, {@link #END} marks the end of the stream.
+         */
+        private final ArrayDeque<PacketData> input = new ArrayDeque<>();
+        private final BatchStreamFilter batchFilter;
+        private PacketData[] batch;
+        private boolean[] batchKeep;
         private boolean active;
         private long lastTimestamp;
-        private StreamElement next;
+
+        public StreamElement(FilterInfo filter) {
+            this.filter = checkNotNull(filter);
+            this.batchFilter = filter.getFilter() instanceof BatchStreamFilter ? (BatchStreamFilter) filter.getFilter() : null;
+        }
 
         /**
-         * When using this constructor make sure to override {@link #process(PacketData)} as it will throw NPE otherwise.
+         * Processes the next packet in the input queue. Batch filters instead get all consecutive queued packets to
+         * which they apply (up to {@link #BATCH_SIZE}), per-packet filters get one at a time.
          */
-        protected StreamElement() {
-            filter = null;
+        public void processInput(ArrayDeque<PacketData> out) throws IOException {
+            PacketData data = input.poll();
+            if (data == END) {
+                process(null, out);
+            } else if (batchFilter != null && filter.applies(data.getTime())) {
+                processBatch(data, out);
+            } else {
+                process(data, out);
+            }
         }
 
-        public StreamElement(FilterInfo filter) {
-            this.filter = checkNotNull(filter);
+        private void processBatch(PacketData first, ArrayDeque<PacketData> out) throws IOException {
+            if (batch == null) {
+                batch = new PacketData[BATCH_SIZE];
+                batchKeep = new boolean[BATCH_SIZE];
+            }
+            int length = 0;
+            batch[length++] = first;
+            PacketData data;
+            while (length < BATCH_SIZE && (data = input.peek()) != null && data != END && filter.applies(data.getTime())) {
+                batch[length++] = input.poll();
+            }
+            Arrays.fill(batchKeep, 0, length, true);
+
+            if (!active) {
+                batchFilter.onStart(context);
+                active = true;
+            }
+            try {
+                batchFilter.onPackets(context, batch, batchKeep, length);
+            } catch (Throwable t) {
+                // The batch is lost, so are its packets
+                for (int i = 0; i < length; i++) {
+                    batch[i].getPacket().getBuf().release();
+                    batch[i] = null;
+                }
+                throw t;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (batchKeep[i]) {
+                    emit(batch[i], out);
+                } else {
+                    batch[i].getPacket().getBuf().release();
+                }
+                batch[i] = null;
+            }
+            flushInserted(out);
         }
 
-        public void process(PacketData data) throws IOException {
+        /**
+         * Processes the given packet (or the end of the stream if {@code null}) and appends everything which is to be
+         * passed on to the next element to the given queue.
+         */
+        public void process(PacketData data, ArrayDeque<PacketData> out) throws IOException {
             boolean keep = true;
             if (data != null && filter.applies(data.getTime())) {
                 if (!active) {
                     filter.getFilter().onStart(context);
                     active = true;
                 }
-                keep = filter.getFilter().onPacket(context, data);
+                try {
+                    keep = filter.getFilter().onPacket(context, data);
+                } catch (Throwable t) {
+                    data.getPacket().getBuf().release(); // the packet is lost, same as if it had not been kept
+                    throw t;
+                }
                 if (!keep) {
                     data.getPacket().getBuf().release();
                 }
             } else if (active) {
                 filter.getFilter().onEnd(context, lastTimestamp);
                 active = false;
-                for (PacketData d : inserted) {
-                    if (d.getTime() > lastTimestamp) {
-                        lastTimestamp = d.getTime();
-                    }
-                    next.process(d);
-                }
-                inserted.clear();
+                flushInserted(out);
             }
             if (data != null && keep) {
-                if (data.getTime() > lastTimestamp) {
-                    lastTimestamp = data.getTime();
-                }
-                next.process(data);
+                emit(data, out);
             }
-            for (PacketData d : inserted) {
-                if (d.getTime() > lastTimestamp) {
-                    lastTimestamp = d.getTime();
-                }
-                next.process(d);
-            }
-            inserted.clear();
+            flushInserted(out);
             if (data == null) {
-                next.process(null);
+                out.add(END);
             }
         }
 
-        @Override
-        public String toString() {
-            return (active ? "" : "in") + "active " + filter;
+        private void flushInserted(ArrayDeque<PacketData> out) {
+            PacketData d;
+            while ((d = inserted.poll()) != null) {
+                emit(d, out);
+            }
         }
-    }
 
-    private class StreamElementEnd extends StreamElement {
-        public StreamElementEnd() {
-            super();
+        private void emit(PacketData data, ArrayDeque<PacketData> out) {
+            if (data.getTime() > lastTimestamp) {
+                lastTimestamp = data.getTime();
+            }
+            out.add(data);
         }
 
-        @Override
-        public void process(PacketData data) {
-            if (data != null) {
-                AbstractPacketStream.this.inserted.add(data);
-            }
+        private void discard() {
+            releaseAll(input);
+            releaseAll(inserted);
         }
 
         @Override
         public String toString() {
-            return "Out";
+            return (active ? "" : "in") + "active " + filter;
         }
     }
 
-    private final Queue<PacketData> inserted = new LinkedList<>();
+    /**
+     * Marks the end of the stream in the input queues of the pipeline (which cannot hold {@code null}).
+     */
+    private static final PacketData END = new PacketData(-1, null);
+    private static final StreamElement[] NO_ELEMENTS = new StreamElement[0];
+
+    private final ArrayDeque<PacketData> inserted = new ArrayDeque<>();
     private final List<StreamElement> filters = new ArrayList<>();
 
-    private StreamElement firstElement;
+    private StreamElement[] pipeline = NO_ELEMENTS;
+    private int readAhead = 1;
 
     @Override
     public void insert(PacketData packet) {
@@ -210,21 +272,13 @@ public abstract class AbstractPacketStream implements PacketStream {
     }
 
     private void buildPipe() {
-        Iterator<StreamElement> iter = filters.iterator();
-        StreamElement l = null;
-        while (iter.hasNext()) {
-            StreamElement e = iter.next();
-            if (l == null) {
-                firstElement = e;
-            } else {
-                l.next = e;
+        pipeline = filters.toArray(NO_ELEMENTS);
+        readAhead = 1;
+        for (StreamElement element : pipeline) {
+            if (element.batchFilter != null) {
+                readAhead = BATCH_SIZE;
+                break;
             }
-            l = e;
-        }
-        if (l == null) {
-            firstElement = new StreamElementEnd();
-        } else {
-            l.next = new StreamElementEnd();
         }
     }
 
@@ -250,16 +304,50 @@ public abstract class AbstractPacketStream implements PacketStream {
         buildPipe();
     }
 
+    /**
+     * Passes all packets queued at the start of the given pipeline through the whole pipeline.
+     * Each element processes all of its queued input before the next element runs. Since every element still sees its
+     * input in the same order, the result is the same as if each packet was passed through the whole pipeline on its
+     * own, but consecutive packets can be handed to {@link BatchStreamFilter}s at once.
+     * Changes to the filters made from within the pipeline take effect once the next packets are read from the input.
+     */
+    private void drive(StreamElement[] pipeline) throws IOException {
+        int last = pipeline.length - 1;
+        for (int i = 0; i < last; i++) {
+            StreamElement element = pipeline[i];
+            ArrayDeque<PacketData> out = pipeline[i + 1].input;
+            while (!element.input.isEmpty()) {
+                element.processInput(out);
+            }
+        }
+        StreamElement element = pipeline[last];
+        while (!element.input.isEmpty()) {
+            element.processInput(inserted);
+        }
+        if (inserted.peekLast() == END) {
+            inserted.removeLast();
+        }
+    }
+
     protected abstract PacketData nextInput();
 
     @Override
     public PacketData next() throws IOException {
-        while (inserted.isEmpty()) {
-            PacketData next = nextInput();
-            if (next == null) {
-                break;
+        boolean more = true;
+        while (inserted.isEmpty() && more) {
+            StreamElement[] pipeline = this.pipeline;
+            ArrayDeque<PacketData> queue = pipeline.length == 0 ? inserted : pipeline[0].input;
+            for (int i = 0; i < readAhead; i++) {
+                PacketData next = nextInput();
+                if (next == null) {
+                    more = false;
+                    break;
+                }
+                queue.add(next);
+            }
+            if (pipeline.length > 0) {
+                drive(pipeline);
             }
-            firstElement.process(next);
         }
         return inserted.poll();
     }
@@ -271,12 +359,36 @@ public abstract class AbstractPacketStream implements PacketStream {
 
     @Override
     public List<PacketData> end() throws IOException {
-        firstElement.process(null);
-        List<PacketData> result = new LinkedList<>(inserted);
+        StreamElement[] pipeline = this.pipeline;
+        if (pipeline.length > 0) {
+            pipeline[0].input.add(END);
+            drive(pipeline);
+        }
+        List<PacketData> result = new ArrayList<>(inserted);
         inserted.clear();
         return result;
     }
 
+    /**
+     * Releases all packets which are still queued in the pipeline of this stream, e.g. after a filter has thrown an
+     * exception. The stream must not be used afterwards.
+     */
+    void discard() {
+        for (StreamElement element : pipeline) {
+            element.discard();
+        }
+        releaseAll(inserted);
+    }
+
+    private static void releaseAll(ArrayDeque<PacketData> queue) {
+        PacketData data;
+        while ((data = queue.poll()) != null) {
+            if (data != END) {
+                data.release();
+            }
+        }
+    }
+
     /**
      * Clean up this packet stream (e.g. close input streams, etc.)
      */
@@ -285,15 +397,10 @@ public abstract class AbstractPacketStream implements PacketStream {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("PacketStream[");
-        StreamElement e = firstElement;
-        while (e != null) {
-            sb.append(e);
-            if (e.next != null) {
-                sb.append(" -> ");
-            }
-            e = e.next;
+        for (StreamElement e : pipeline) {
+            sb.append(e).append(" -> ");
         }
-        sb.append("]");
+        sb.append("Out]");
         return sb.toString();
     }
 }
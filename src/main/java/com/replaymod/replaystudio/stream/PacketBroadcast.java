@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.util.IOConsumer;
+import com.replaymod.replaystudio.util.IOSupplier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads (and therefore decodes) a stream of packets once and passes every packet on to multiple consumers, each
+ * running at its own pace on its own thread.
+ *
+ * Packets are passed through a fixed-size single-producer/multi-consumer ring buffer. Each packet is retained once
+ * per consumer, so every consumer owns the packets it receives and must release them.
+ * The producer only blocks when the slowest consumer is a full ring behind, consumers only block when they have
+ * caught up with the producer.
+ *
+ * All consumers must be subscribed before {@link #run(IOSupplier)} is called.
+ */
+public class PacketBroadcast {
+    private static final long PARK_NANOS = 50_000;
+
+    private final PacketData[] ring;
+    private final int mask;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Number of packets published so far.
+     */
+    private volatile long published;
+    private volatile boolean done;
+    private volatile Throwable failure;
+    private boolean started;
+
+    /**
+     * @param capacity Size of the ring buffer, rounded up to the next power of two
+     */
+    public PacketBroadcast(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new PacketData[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds a new consumer which will receive all packets.
+     * The returned subscriber must be read until its end or closed, otherwise the producer will eventually block.
+     */
+    public synchronized Subscriber subscribe() {
+        if (started) {
+            throw new IllegalStateException("Already started");
+        }
+        Subscriber subscriber = new Subscriber();
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Adds a new consumer which is run on the given executor and passed all packets in order.
+     * The consumer takes ownership of the packets passed to it.
+     * @return Future which completes once the consumer has received all packets
+     */
+    public CompletableFuture<Void> subscribe(Executor executor, IOConsumer<PacketData> consumer) {
+        Subscriber subscriber = subscribe();
+        return CompletableFuture.runAsync(() -> {
+            try (Subscriber it = subscriber) {
+                PacketData data;
+                while ((data = it.next()) != null) {
+                    consumer.consume(data);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Reads all packets from the given source and publishes them to all subscribers.
+     * Runs on the calling thread and returns once all packets have been published (not necessarily consumed).
+     * @param source Supplier of packets, {@code null} marks the end
+     */
+    public void run(IOSupplier<PacketData> source) throws IOException {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Already started");
+            }
+            started = true;
+        }
+        try {
+            PacketData data;
+            while ((data = source.get()) != null) {
+                publish(data);
+            }
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
+        } finally {
+            done = true;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.closed) {
+                    subscriber.drain();
+                }
+            }
+        }
+    }
+
+    private void publish(PacketData data) {
+        long seq = published;
+        // Wait for the slot to be free, i.e. for all subscribers to have moved past its previous content
+        while (true) {
+            long min = seq;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.closed) {
+                    subscriber.drain();
+                }
+                min = Math.min(min, subscriber.cursor);
+            }
+            if (seq - min < ring.length) {
+                break;
+            }
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+
+        // Closed subscribers get their reference as well (and the producer releases it again with the next drain),
+        // that way every slot which a subscriber has not yet read is guaranteed to hold a reference for it.
+        int references = subscribers.size();
+        if (references == 0) {
+            data.release();
+            data = null;
+        } else {
+            for (int i = 1; i < references; i++) {
+                data.retain();
+            }
+        }
+        ring[(int) seq & mask] = data;
+        published = seq + 1;
+    }
+
+    public class Subscriber implements AutoCloseable {
+        /**
+         * Sequence number of the next packet to be read by this subscriber.
+         */
+        private volatile long cursor;
+        private volatile boolean closed;
+
+        private Subscriber() {
+        }
+
+        /**
+         * Returns the next packet, blocking until it is available.
+         * The caller takes ownership of the returned packet.
+         * Must only be called from one thread at a time.
+         * @return The next packet or {@code null} if the end of the stream has been reached
+         * @throws IOException if the producer failed
+         */
+        public PacketData next() throws IOException {
+            if (closed) {
+                throw new IllegalStateException("Subscriber has been closed");
+            }
+            long seq = cursor;
+            while (seq >= published) {
+                if (done && seq >= published) {
+                    Throwable failure = PacketBroadcast.this.failure;
+                    if (failure != null) {
+                        throw new IOException("Producer failed", failure);
+                    }
+                    return null;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            PacketData data = ring[(int) seq & mask];
+            cursor = seq + 1;
+            return data;
+        }
+
+        /**
+         * Returns a packet stream reading from this subscriber.
+         */
+        public PacketStream asPacketStream() {
+            return new AbstractPacketStream() {
+                @Override
+                protected PacketData nextInput() {
+                    try {
+                        return Subscriber.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void start() {
+
+                }
+
+                @Override
+                protected void cleanup() {
+                    Subscriber.this.close();
+                }
+            };
+        }
+
+        /**
+         * Stops receiving packets, releasing all packets which have been published to but not yet read by this
+         * subscriber (now or in the future).
+         * Must be called from the thread reading this subscriber (or after it has stopped reading).
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            drain();
+        }
+
+        /**
+         * Releases all packets published but not yet read. Called by both, this subscriber and the producer, once
+         * this subscriber is closed.
+         */
+        private synchronized void drain() {
+            long end = published;
+            for (long seq = cursor; seq < end; seq++) {
+                PacketData data = ring[(int) seq & mask];
+                if (data != null) {
+                    data.release();
+                }
+            }
+            cursor = end;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.replaymod.replaystudio.PacketData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Demand-driven adapter for a {@link PacketStream}, following the Reactive Streams protocol.
+ *
+ * Packets are only pulled from the stream (and therefore read, decoded and passed through its filters) once the
+ * subscriber has requested them via {@link Subscription#request(long)}, so a slow subscriber slows down decoding
+ * instead of causing packets to pile up. All interaction with the stream and all signals to the subscriber happen
+ * on the given executor, one task at a time.
+ *
+ * The stream must have been started and all filters must have been added before subscribing.
+ * Only a single subscriber is supported. Each packet passed to {@link Subscriber#onNext(PacketData)} is owned by the
+ * subscriber which is responsible for releasing it. Packets which have been read but not yet delivered when the
+ * subscription is cancelled are released immediately.
+ */
+public class PacketPublisher {
+    private static final Logger LOGGER = Logger.getLogger(PacketPublisher.class.getName());
+
+    private final PacketStream stream;
+    private final Closeable input;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    public PacketPublisher(PacketStream stream, Executor executor) {
+        this(stream, null, executor);
+    }
+
+    /**
+     * @param stream The stream to read packets from
+     * @param input Closed once the stream has been completed or the subscription has been cancelled, may be null
+     * @param executor Executor on which packets are read and signals are sent
+     */
+    public PacketPublisher(PacketStream stream, Closeable input, Executor executor) {
+        this.stream = stream;
+        this.input = input;
+        this.executor = executor;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) throw new NullPointerException("subscriber");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Only a single subscriber is supported"));
+            return;
+        }
+        subscriber.onSubscribe(new Emitter(subscriber));
+    }
+
+    /**
+     * Receives packets from a {@link PacketPublisher}. Equivalent to {@code org.reactivestreams.Subscriber}.
+     */
+    public interface Subscriber {
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * @param data The next packet, the subscriber is responsible for releasing it
+         */
+        void onNext(PacketData data);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Link between a {@link PacketPublisher} and its {@link Subscriber}. Equivalent to
+     * {@code org.reactivestreams.Subscription}.
+     */
+    public interface Subscription {
+        /**
+         * Requests more packets. Requests are cumulative, {@link Long#MAX_VALUE} means unbounded.
+         * @param n Number of packets, must be positive
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private class Emitter implements Subscription {
+        private final Subscriber subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        /**
+         * Number of pending drain requests, the drain loop runs for as long as this is non-zero.
+         */
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // Only accessed from the drain loop
+        private ArrayDeque<PacketData> remaining;
+        private boolean finished;
+
+        Emitter(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested non-positive number of packets: " + n);
+            } else {
+                long current, next;
+                do {
+                    current = requested.get();
+                    if (current == Long.MAX_VALUE) {
+                        return; // already unbounded
+                    }
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!finished) {
+                    emit();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            try {
+                while (true) {
+                    Throwable invalidRequest = this.invalidRequest;
+                    if (invalidRequest != null) {
+                        finish();
+                        subscriber.onError(invalidRequest);
+                        return;
+                    }
+                    if (cancelled) {
+                        finish();
+                        return;
+                    }
+                    long demand = requested.get();
+                    if (demand == 0) {
+                        return;
+                    }
+                    PacketData data = poll();
+                    if (data == null) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (demand != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(data);
+                }
+            } catch (Throwable t) {
+                if (!finished) {
+                    try {
+                        finish();
+                    } catch (Throwable suppressed) {
+                        t.addSuppressed(suppressed);
+                    }
+                    subscriber.onError(t);
+                } else {
+                    // The subscriber must not be signalled after cancelling or after a terminal signal
+                    LOGGER.log(Level.WARNING, "Failed to clean up packet stream" + (cancelled ? " after cancel:" : ":"), t);
+                }
+            }
+        }
+
+        private PacketData poll() throws IOException {
+            if (remaining == null) {
+                PacketData data = stream.next();
+                if (data != null) {
+                    return data;
+                }
+                remaining = new ArrayDeque<>(stream.end());
+            }
+            return remaining.poll();
+        }
+
+        /**
+         * Ends the stream, releases all packets which have not been delivered and closes the input.
+         */
+        private void finish() throws IOException {
+            finished = true;
+            if (remaining == null) {
+                remaining = new ArrayDeque<>(stream.end());
+            }
+            PacketData data;
+            while ((data = remaining.poll()) != null) {
+                data.release();
+            }
+            if (input != null) {
+                input.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.util.IOConsumer;
+import com.replaymod.replaystudio.util.IOSupplier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Applies segment-safe filters to a stream of packets by splitting it into segments which are then filtered in
+ * parallel.
+ * The input is still read sequentially (decoding is stateful) and the results are passed on in their original order.
+ * Segments are only ever split between packets with different timestamps.
+ * @see com.replaymod.replaystudio.filter.StreamFilter#isSegmentSafe()
+ */
+public class SegmentedPacketProcessor {
+    private final Executor executor;
+    private final int parallelism;
+    private final int segmentSize;
+
+    /**
+     * @param executor Executor on which the segments are filtered
+     * @param parallelism Maximum number of segments being filtered at the same time
+     * @param segmentSize Minimum number of packets per segment
+     */
+    public SegmentedPacketProcessor(Executor executor, int parallelism, int segmentSize) {
+        if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+        if (segmentSize < 1) throw new IllegalArgumentException("segmentSize must be at least 1");
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns whether all of the given filters are segment-safe.
+     */
+    public static boolean supports(Collection<PacketStream.FilterInfo> filters) {
+        for (PacketStream.FilterInfo info : filters) {
+            if (!info.getFilter().isSegmentSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads all packets from the given input, applies the given filters and passes the result to the given output.
+     * @param input Supplies the input packets, {@code null} marks the end
+     * @param filters The filters to be applied, must all be segment-safe
+     * @param output Consumer of the resulting packets, takes ownership of them. Always called on the calling thread.
+     */
+    public void process(IOSupplier<PacketData> input, List<PacketStream.FilterInfo> filters,
+                        IOConsumer<PacketData> output) throws IOException {
+        if (!supports(filters)) {
+            throw new IllegalArgumentException("Not all filters are segment-safe: " + filters);
+        }
+
+        ArrayDeque<CompletableFuture<List<PacketData>>> pending = new ArrayDeque<>();
+        List<PacketData> segment = new ArrayList<>(segmentSize);
+        try {
+            PacketData data;
+            while ((data = input.get()) != null) {
+                if (segment.size() >= segmentSize && data.getTime() != segment.get(segment.size() - 1).getTime()) {
+                    pending.add(submit(segment, filters));
+                    segment = new ArrayList<>(segmentSize);
+                    while (pending.size() >= parallelism) {
+                        write(pending.poll(), output);
+                    }
+                }
+                segment.add(data);
+            }
+            if (!segment.isEmpty()) {
+                pending.add(submit(segment, filters));
+                segment = null;
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), output);
+            }
+        } catch (Throwable t) {
+            if (segment != null) {
+                segment.forEach(PacketData::release);
+            }
+            for (CompletableFuture<List<PacketData>> future : pending) {
+                try {
+                    future.join().forEach(PacketData::release);
+                } catch (CompletionException e) {
+                    t.addSuppressed(e.getCause());
+                }
+            }
+            throw t;
+        }
+    }
+
+    private CompletableFuture<List<PacketData>> submit(List<PacketData> segment, List<PacketStream.FilterInfo> filters) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return filter(segment, filters);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private static List<PacketData> filter(List<PacketData> segment, List<PacketStream.FilterInfo> filters) throws IOException {
+        Iterator<PacketData> iter = segment.iterator();
+        AbstractPacketStream stream = AbstractPacketStream.of(() -> iter.hasNext() ? iter.next() : null);
+        for (PacketStream.FilterInfo info : filters) {
+            stream.addFilter(info.getFilter(), info.getFrom(), info.getTo());
+        }
+        List<PacketData> result = new ArrayList<>(segment.size());
+        try {
+            PacketData data;
+            while ((data = stream.next()) != null) {
+                result.add(data);
+            }
+            result.addAll(stream.end());
+        } catch (Throwable t) {
+            result.forEach(PacketData::release);
+            iter.forEachRemaining(PacketData::release);
+            stream.discard();
+            throw t;
+        }
+        return result;
+    }
+
+    private static void write(CompletableFuture<List<PacketData>> future, IOConsumer<PacketData> output) throws IOException {
+        List<PacketData> result;
+        try {
+            result = future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw e;
+        }
+        Iterator<PacketData> iter = result.iterator();
+        try {
+            while (iter.hasNext()) {
+                output.consume(iter.next());
+            }
+        } catch (Throwable t) {
+            iter.forEachRemaining(PacketData::release);
+            throw t;
+        }
+    }
+}
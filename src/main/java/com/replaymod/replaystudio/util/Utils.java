@@ -19,7 +19,9 @@
 package com.replaymod.replaystudio.util;
 
 import com.github.steveice10.netty.buffer.ByteBuf;
+import com.github.steveice10.netty.buffer.ByteBufAllocator;
 import com.github.steveice10.netty.buffer.Unpooled;
+import com.github.steveice10.netty.buffer.UnpooledByteBufAllocator;
 import com.github.steveice10.netty.util.ReferenceCountUtil;
 import com.github.steveice10.packetlib.io.NetInput;
 import com.github.steveice10.packetlib.io.NetOutput;
@@ -203,18 +205,75 @@ public class Utils {
         out.writeBytes(bytes);
     }
 
+    // Deflating/inflating is done for every single packet in the quick mode cache, so we re-use the (rather expensive
+    // to create, and only freed by finalization if not explicitly ended) zlib instances on each thread.
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * Reads a packet written by {@link #writeCompressedPacket(NetOutput, Packet)}.
+     */
     public static Packet readCompressedPacket(PacketTypeRegistry registry, NetInput in) throws IOException {
+        return readCompressedPacket(registry, in, false, null, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * Reads a packet written by {@link #writeCompressedPacket(NetOutput, Packet, byte[])}.
+     * Note that the format differs from the one used by the overloads without dictionary.
+     * @param dictionary The preset dictionary which was used for writing, may be {@code null} if none was used
+     */
+    public static Packet readCompressedPacket(PacketTypeRegistry registry, NetInput in, byte[] dictionary) throws IOException {
+        return readCompressedPacket(registry, in, dictionary, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    /**
+     * Reads a packet written by {@link #writeCompressedPacket(NetOutput, Packet, byte[])}.
+     * Note that the format differs from the one used by the overloads without dictionary.
+     * @param dictionary The preset dictionary which was used for writing, may be {@code null} if none was used
+     * @param alloc The allocator used for the buffer of compressed packets (uncompressed ones are sliced from the input
+     *              if possible). Must produce buffers which are backed by an array.
+     */
+    public static Packet readCompressedPacket(PacketTypeRegistry registry, NetInput in, byte[] dictionary, ByteBufAllocator alloc) throws IOException {
+        return readCompressedPacket(registry, in, true, dictionary, alloc);
+    }
+
+    /**
+     * @param dictionaryFormat Whether the prefix of the packet contains the dictionary flag (shifting the length by
+     *                         one more bit), as written by {@link #writeCompressedPacket(NetOutput, Packet, byte[])}
+     */
+    private static Packet readCompressedPacket(PacketTypeRegistry registry, NetInput in, boolean dictionaryFormat,
+                                               byte[] dictionary, ByteBufAllocator alloc) throws IOException {
         ByteBuf byteBuf = null;
+        ByteBuf compressedBuf = null;
         try {
             int prefix = in.readVarInt();
-            int len = prefix >> 1;
+            int len = prefix >> (dictionaryFormat ? 2 : 1);
             if ((prefix & 1) == 1) {
                 int fullLen = in.readVarInt();
-                byteBuf = Unpooled.buffer(fullLen);
+                byteBuf = alloc.heapBuffer(fullLen, fullLen);
 
-                Inflater inflater = new Inflater();
-                inflater.setInput(in.readBytes(len));
-                inflater.inflate(byteBuf.array(), byteBuf.arrayOffset(), fullLen);
+                compressedBuf = readRetainedSlice(in, len);
+                Inflater inflater = INFLATER.get();
+                inflater.reset();
+                if (compressedBuf.hasArray()) {
+                    inflater.setInput(compressedBuf.array(), compressedBuf.arrayOffset() + compressedBuf.readerIndex(), len);
+                } else {
+                    byte[] compressed = new byte[len];
+                    compressedBuf.getBytes(compressedBuf.readerIndex(), compressed);
+                    inflater.setInput(compressed);
+                }
+                int read = 0;
+                while (read < fullLen) {
+                    int inflated = inflater.inflate(byteBuf.array(), byteBuf.arrayOffset() + read, fullLen - read);
+                    if (inflated == 0) {
+                        if (inflater.needsDictionary() && dictionary != null && dictionaryFormat && (prefix & 2) == 2) {
+                            inflater.setDictionary(dictionary);
+                        } else if (inflater.needsDictionary() || inflater.needsInput() || inflater.finished()) {
+                            throw new IOException("Failed to inflate packet, got only " + read + " of " + fullLen + " bytes.");
+                        }
+                    }
+                    read += inflated;
+                }
                 byteBuf.writerIndex(fullLen);
             } else {
                 byteBuf = readRetainedSlice(in, len);
@@ -230,21 +289,46 @@ public class Utils {
             throw new RuntimeException(e);
         } finally {
             ReferenceCountUtil.release(byteBuf);
+            ReferenceCountUtil.release(compressedBuf);
         }
     }
 
+    /**
+     * Writes a packet (including its state and id) in compressed form, unless compression would not make it smaller.
+     * The packet can be read with {@link #readCompressedPacket(PacketTypeRegistry, NetInput)}.
+     */
     public static void writeCompressedPacket(NetOutput out, Packet packet) throws IOException {
+        writeCompressedPacket(out, packet, false, null);
+    }
+
+    /**
+     * Writes a packet (including its state and id) in compressed form, unless compression would not make it smaller.
+     * The prefix of the packet additionally records whether the dictionary was used, so the format differs from the one
+     * of {@link #writeCompressedPacket(NetOutput, Packet)} (even if no dictionary is passed).
+     * @param dictionary The preset dictionary to use for compression, or {@code null} to not use one.
+     *                   The same dictionary must then be passed to {@link #readCompressedPacket(PacketTypeRegistry, NetInput, byte[])}.
+     */
+    public static void writeCompressedPacket(NetOutput out, Packet packet, byte[] dictionary) throws IOException {
+        writeCompressedPacket(out, packet, true, dictionary);
+    }
+
+    private static void writeCompressedPacket(NetOutput out, Packet packet, boolean dictionaryFormat, byte[] dictionary) throws IOException {
+        int shift = dictionaryFormat ? 2 : 1;
         ByteBuf byteBuf = Unpooled.buffer();
         try {
             int stateId = 4 - packet.getType().getState().ordinal();
             new ByteBufNetOutput(byteBuf).writeVarInt((stateId << 24) | packet.getId());
-            byteBuf.writeBytes(packet.getBuf());
+            byteBuf.writeBytes(packet.getBuf(), packet.getBuf().readerIndex(), packet.getBuf().readableBytes());
 
             int rawIndex = byteBuf.readerIndex();
             int size = byteBuf.readableBytes();
 
             byteBuf.ensureWritable(size);
-            Deflater deflater = new Deflater();
+            Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
             deflater.setInput(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), size);
             deflater.finish();
             int compressedSize = 0;
@@ -256,15 +340,15 @@ public class Utils {
                 );
             }
 
-            if (compressedSize < size) {
+            if (deflater.finished() && compressedSize < size) {
                 byteBuf.readerIndex(rawIndex + size);
                 byteBuf.writerIndex(rawIndex + size + compressedSize);
-                out.writeVarInt(compressedSize << 1 | 1);
+                out.writeVarInt(compressedSize << shift | (dictionary != null ? 2 : 0) | 1);
                 out.writeVarInt(size);
             } else {
                 byteBuf.readerIndex(rawIndex);
                 byteBuf.writerIndex(rawIndex + size);
-                out.writeVarInt(size << 1);
+                out.writeVarInt(size << shift);
             }
             writeBytes(out, byteBuf);
         } catch (IOException e) {
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.filter;
+
+import com.google.gson.JsonObject;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import com.replaymod.replaystudio.stream.IteratorStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChangeTimestampFilterTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    @Test
+    public void testReinsertedPacketsStayValid() throws IOException {
+        ChangeTimestampFilter filter = new ChangeTimestampFilter();
+        JsonObject config = new JsonObject();
+        config.addProperty("offset", 100);
+        filter.init(null, config);
+
+        List<Packet> packets = new ArrayList<>();
+        List<PacketData> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Packet packet = new Packet(REGISTRY, PacketType.KeepAlive);
+            packets.add(packet);
+            list.add(new PacketData(i * 10, packet));
+        }
+
+        new IteratorStream(list.listIterator(), filter).processAll();
+
+        assertEquals(3, list.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(100 + i * 10, list.get(i).getTime());
+            assertEquals(packets.get(i), list.get(i).getPacket());
+            assertEquals(1, packets.get(i).getBuf().refCnt());
+            list.get(i).release();
+            assertEquals(0, packets.get(i).getBuf().refCnt());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.launcher;
+
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CutLauncherTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    /**
+     * Records the packets written to it and releases them immediately (so any later release would fail).
+     */
+    private static class RecordingOutput implements CutLauncher.PartOutput {
+        final List<Long> times = new ArrayList<>();
+        final List<PacketType> types = new ArrayList<>();
+        int finished;
+
+        @Override
+        public void write(PacketData data) {
+            times.add(data.getTime());
+            types.add(data.getPacket().getType());
+            data.release();
+        }
+
+        @Override
+        public void finish() {
+            finished++;
+        }
+    }
+
+    @Test
+    public void testSplitWithScoreboardReleasesEveryPacketOnce() throws Exception {
+        List<PacketData> input = new ArrayList<>();
+        input.add(new PacketData(0, new Packet(REGISTRY, PacketType.ScoreboardObjective)));
+        input.add(new PacketData(0, new Packet(REGISTRY, PacketType.DisplayScoreboard)));
+        input.add(new PacketData(10, new Packet(REGISTRY, PacketType.UpdateScore)));
+        input.add(new PacketData(100, new Packet(REGISTRY, PacketType.UpdateScore)));
+        input.add(new PacketData(150, new Packet(REGISTRY, PacketType.KeepAlive)));
+        input.add(new PacketData(200, new Packet(REGISTRY, PacketType.UpdateScore)));
+        input.add(new PacketData(250, new Packet(REGISTRY, PacketType.KeepAlive)));
+        List<Packet> packets = new ArrayList<>();
+        input.forEach(it -> packets.add(it.getPacket()));
+
+        List<RecordingOutput> outputs = Arrays.asList(new RecordingOutput(), new RecordingOutput(), new RecordingOutput());
+        Iterator<PacketData> iter = input.iterator();
+        CutLauncher.split(() -> iter.hasNext() ? iter.next() : null, new long[]{100, 200}, outputs);
+
+        for (RecordingOutput output : outputs) {
+            assertEquals(1, output.finished);
+        }
+        assertEquals(Arrays.asList(0L, 0L, 10L), outputs.get(0).times);
+
+        // Later parts begin with the scoreboard state at time 0, followed by their own (shifted) packets
+        RecordingOutput second = outputs.get(1);
+        assertEquals(Arrays.asList(0L, 50L), second.times.subList(second.times.size() - 2, second.times.size()));
+        assertTrue(second.types.contains(PacketType.ScoreboardObjective));
+        RecordingOutput third = outputs.get(2);
+        assertEquals(Arrays.asList(0L, 50L), third.times.subList(third.times.size() - 2, third.times.size()));
+        assertTrue(third.types.contains(PacketType.ScoreboardObjective));
+        for (int i = 0; i < third.times.size() - 2; i++) {
+            assertEquals(0L, (long) third.times.get(i));
+        }
+
+        for (Packet packet : packets) {
+            assertEquals(0, packet.getBuf().refCnt());
+        }
+    }
+
+    @Test
+    public void testSplitSkipsParts() throws Exception {
+        List<Packet> packets = new ArrayList<>();
+        long[] times = {0, 50, 100, 150, 200, 250};
+        int[] index = {0};
+        RecordingOutput last = new RecordingOutput();
+        CutLauncher.split(() -> {
+            if (index[0] >= times.length) return null;
+            Packet packet = new Packet(REGISTRY, PacketType.UpdateScore);
+            packets.add(packet);
+            return new PacketData(times[index[0]++], packet);
+        }, new long[]{100, 200}, Arrays.asList(null, null, last));
+
+        assertEquals(1, last.finished);
+        assertEquals(Arrays.asList(0L, 50L), last.times.subList(last.times.size() - 2, last.times.size()));
+        for (Packet packet : packets) {
+            assertEquals(0, packet.getBuf().refCnt());
+        }
+    }
+
+    @Test
+    public void testAppendSkipsRepeatedLoginPhase() throws Exception {
+        ProtocolVersion version = ProtocolVersion.v1_20_2;
+        PacketTypeRegistry login = PacketTypeRegistry.get(version, State.LOGIN);
+        PacketTypeRegistry config = PacketTypeRegistry.get(version, State.CONFIGURATION);
+        PacketTypeRegistry play = PacketTypeRegistry.get(version, State.PLAY);
+
+        RecordingOutput output = new RecordingOutput();
+        CutLauncher.Concatenation concat = new CutLauncher.Concatenation();
+        concat.out = output;
+        List<Packet> packets = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            long offset = i * 100;
+            concat.begin(i > 0, offset);
+            for (Packet packet : Arrays.asList(
+                    new Packet(login, PacketType.LoginSuccess),
+                    new Packet(config, PacketType.ConfigFinish),
+                    new Packet(play, PacketType.KeepAlive))) {
+                packets.add(packet);
+                concat.add(new PacketData(offset + packets.size(), packet));
+            }
+        }
+
+        assertEquals(Arrays.asList(
+                PacketType.LoginSuccess, PacketType.ConfigFinish, PacketType.KeepAlive,
+                PacketType.Reconfigure, PacketType.ConfigFinish, PacketType.KeepAlive
+        ), output.types);
+        for (Packet packet : packets) {
+            assertEquals(0, packet.getBuf().refCnt());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.rar.cache;
+
+import com.github.steveice10.netty.buffer.ByteBuf;
+import com.github.steveice10.netty.buffer.Unpooled;
+import com.github.steveice10.packetlib.tcp.io.ByteBufNetInput;
+import com.github.steveice10.packetlib.tcp.io.ByteBufNetOutput;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class WriteableCacheTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    private static void writePackets(WriteableCache cache, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            byte[] payload = new byte[1024];
+            for (int j = 0; j < payload.length; j++) {
+                payload[j] = (byte) ((i + j) % 7);
+            }
+            Packet packet = new Packet(REGISTRY, PacketType.ChunkData, Unpooled.wrappedBuffer(payload));
+            try {
+                cache.writePacket(cache.write(), packet);
+            } finally {
+                packet.release();
+            }
+        }
+    }
+
+    @Test
+    public void continuedCacheMatchesUninterruptedOne() throws IOException {
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        WriteableCache cache = new WriteableCache(original);
+        writePackets(cache, 0, 10);
+
+        // Checkpoint in the middle of dictionary training
+        int index = cache.index();
+        ByteBuf state = Unpooled.buffer();
+        cache.writeState(new ByteBufNetOutput(state));
+        assertEquals(original.size(), index);
+
+        ByteArrayOutputStream continued = new ByteArrayOutputStream();
+        WriteableCache resumed = new WriteableCache(continued, index);
+        resumed.readState(new ByteBufNetInput(state));
+        assertEquals(0, state.readableBytes());
+        state.release();
+
+        writePackets(cache, 10, 50);
+        writePackets(resumed, 10, 50);
+
+        assertNotNull(cache.getDictionary());
+        assertArrayEquals(cache.getDictionary(), resumed.getDictionary());
+        assertEquals(cache.index(), resumed.index());
+        byte[] expected = original.toByteArray();
+        assertArrayEquals(Arrays.copyOfRange(expected, index, expected.length), continued.toByteArray());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.Studio;
+import com.replaymod.replaystudio.filter.BatchStreamFilter;
+import com.replaymod.replaystudio.filter.ChangeTimestampFilter;
+import com.replaymod.replaystudio.filter.StreamFilter;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AbstractPacketStreamTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    private static AbstractPacketStream stream(long...times) {
+        int[] index = {0};
+        return AbstractPacketStream.of(() -> index[0] < times.length
+                ? new PacketData(times[index[0]++], new Packet(REGISTRY, PacketType.KeepAlive))
+                : null);
+    }
+
+    private static List<Long> drain(PacketStream stream) throws IOException {
+        List<Long> times = new ArrayList<>();
+        PacketData data;
+        while ((data = stream.next()) != null) {
+            times.add(data.getTime());
+            data.release();
+        }
+        for (PacketData remaining : stream.end()) {
+            times.add(remaining.getTime());
+            remaining.release();
+        }
+        return times;
+    }
+
+    private static class NoOpFilter implements StreamFilter {
+        @Override
+        public String getName() {
+            return "noop";
+        }
+
+        @Override
+        public void init(Studio studio, JsonObject config) {
+        }
+
+        @Override
+        public void onStart(PacketStream stream) {
+        }
+
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) throws IOException {
+            return true;
+        }
+
+        @Override
+        public void onEnd(PacketStream stream, long timestamp) {
+        }
+    }
+
+    /**
+     * Inserts a copy of every packet (offset by the given amount of time) right after it and one more packet at the
+     * end.
+     */
+    private static class DuplicateFilter extends NoOpFilter {
+        private final long offset;
+
+        DuplicateFilter(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) {
+            stream.insert(data.getTime() + offset, new Packet(REGISTRY, PacketType.KeepAlive));
+            return true;
+        }
+
+        @Override
+        public void onEnd(PacketStream stream, long timestamp) {
+            stream.insert(timestamp + offset, new Packet(REGISTRY, PacketType.KeepAlive));
+        }
+    }
+
+    @Test
+    public void testInsertedPacketsFollowCurrentPacket() throws IOException {
+        AbstractPacketStream stream = stream(10, 20);
+        stream.addFilter(new DuplicateFilter(1));
+        stream.addFilter(new DuplicateFilter(100));
+        assertEquals(Arrays.asList(10L, 110L, 11L, 111L, 20L, 120L, 21L, 121L, 22L, 122L, 222L), drain(stream));
+    }
+
+    @Test
+    public void testFilterEndsWhenLeavingTimeRange() throws IOException {
+        AbstractPacketStream stream = stream(10, 20, 30);
+        stream.addFilter(new DuplicateFilter(1), 0, 15);
+        assertEquals(Arrays.asList(10L, 11L, 12L, 20L, 30L), drain(stream));
+    }
+
+    @Test
+    public void testDroppedPacketsAreReleased() throws IOException {
+        Packet packet = new Packet(REGISTRY, PacketType.KeepAlive);
+        List<PacketData> input = new ArrayList<>(Collections.singletonList(new PacketData(5, packet)));
+        AbstractPacketStream stream = AbstractPacketStream.of(() -> input.isEmpty() ? null : input.remove(0));
+        stream.addFilter(new NoOpFilter() {
+            @Override
+            public boolean onPacket(PacketStream stream, PacketData data) {
+                return false;
+            }
+        });
+        packet.retain();
+        assertNull(stream.next());
+        assertEquals(1, packet.getBuf().refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testBatchFilterReceivesConsecutivePackets() throws IOException {
+        List<Integer> batchSizes = new ArrayList<>();
+        AbstractPacketStream stream = stream(10, 20, 30, 40, 50);
+        stream.addFilter(new DuplicateFilter(1), 25, 35);
+        stream.addFilter(new BatchFilter() {
+            @Override
+            public void onPackets(PacketStream stream, PacketData[] packets, boolean[] keep, int length) {
+                batchSizes.add(length);
+                for (int i = 0; i < length; i++) {
+                    keep[i] = packets[i].getTime() % 10 == 0;
+                }
+                stream.insert(packets[length - 1].getTime() + 5, new Packet(REGISTRY, PacketType.KeepAlive));
+            }
+        });
+        // Packets inserted by the first filter are part of the same batch and get dropped
+        assertEquals(Arrays.asList(10L, 20L, 30L, 40L, 50L, 55L), drain(stream));
+        assertEquals(Collections.singletonList(7), batchSizes);
+    }
+
+    private static abstract class BatchFilter extends NoOpFilter implements BatchStreamFilter {
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) throws IOException {
+            return BatchStreamFilter.super.onPacket(stream, data);
+        }
+    }
+
+    @Test
+    public void testTimestampFilterRewritesBatchInPlace() throws IOException {
+        ChangeTimestampFilter filter = new ChangeTimestampFilter();
+        JsonObject config = new JsonObject();
+        config.addProperty("offset", 5);
+        JsonObject ramp = new JsonObject();
+        ramp.addProperty("from", 2000);
+        ramp.addProperty("speed", 2);
+        JsonArray ramps = new JsonArray();
+        ramps.add(ramp);
+        config.add("ramps", ramps);
+        filter.init(null, config);
+
+        AbstractPacketStream stream = stream(0, 1000, 2000, 3000, 4000);
+        stream.addFilter(filter);
+        stream.addFilter(new DuplicateFilter(1));
+        assertEquals(Arrays.asList(5L, 6L, 1005L, 1006L, 2005L, 2006L, 2505L, 2506L, 3005L, 3006L, 3007L), drain(stream));
+    }
+
+    @Test
+    @Ignore("Benchmark, run manually")
+    public void benchmarkNoOpFilterChain() throws IOException {
+        Packet packet = new Packet(REGISTRY, PacketType.KeepAlive);
+        for (int filters = 5; filters <= 10; filters++) {
+            int packets = 5_000_000;
+            int[] remaining = {packets};
+            AbstractPacketStream stream = AbstractPacketStream.of(() ->
+                    remaining[0]-- > 0 ? new PacketData(remaining[0], packet) : null);
+            for (int i = 0; i < filters; i++) {
+                stream.addFilter(new NoOpFilter());
+            }
+            long start = System.nanoTime();
+            while (stream.next() != null) ;
+            stream.end();
+            long time = System.nanoTime() - start;
+            System.out.printf("%d filters: %.1f ns/packet%n", filters, (double) time / packets);
+        }
+    }
+}
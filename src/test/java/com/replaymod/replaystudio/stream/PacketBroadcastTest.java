@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PacketBroadcastTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    @Test
+    public void testAllSubscribersReceiveAllPacketsAndReleaseThem() throws Exception {
+        int count = 10_000;
+        List<Packet> packets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            packets.add(new Packet(REGISTRY, PacketType.KeepAlive));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            PacketBroadcast broadcast = new PacketBroadcast(64);
+            List<Long> firstTimes = new ArrayList<>();
+            List<Long> secondTimes = new ArrayList<>();
+            List<Long> earlyTimes = new ArrayList<>();
+            CompletableFuture<Void> first = broadcast.subscribe(executor, data -> {
+                firstTimes.add(data.getTime());
+                data.release();
+            });
+            CompletableFuture<Void> second = broadcast.subscribe(executor, data -> {
+                secondTimes.add(data.getTime());
+                data.release();
+            });
+            // Reads some packets and then stops, the remaining ones must still be released
+            PacketBroadcast.Subscriber early = broadcast.subscribe();
+            CompletableFuture<Void> third = CompletableFuture.runAsync(() -> {
+                try (PacketBroadcast.Subscriber it = early) {
+                    for (int i = 0; i < 100; i++) {
+                        PacketData data = it.next();
+                        earlyTimes.add(data.getTime());
+                        data.release();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }, executor);
+
+            int[] next = {0};
+            broadcast.run(() -> next[0] < count ? new PacketData(next[0], packets.get(next[0]++)) : null);
+            CompletableFuture.allOf(first, second, third).get();
+
+            // Every consumer must see every packet exactly once and in order
+            List<Long> expected = new ArrayList<>();
+            for (long i = 0; i < count; i++) {
+                expected.add(i);
+            }
+            assertEquals(expected, firstTimes);
+            assertEquals(expected, secondTimes);
+            assertEquals(expected.subList(0, 100), earlyTimes);
+            for (Packet packet : packets) {
+                assertEquals(0, packet.getBuf().refCnt());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
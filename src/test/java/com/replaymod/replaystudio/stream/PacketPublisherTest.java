@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.google.gson.JsonObject;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.Studio;
+import com.replaymod.replaystudio.filter.StreamFilter;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PacketPublisherTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    private static class RecordingSubscriber implements PacketPublisher.Subscriber {
+        final List<Long> received = new ArrayList<>();
+        PacketPublisher.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(PacketPublisher.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(PacketData data) {
+            received.add(data.getTime());
+            data.release();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @Test
+    public void testOnlyReadsRequestedPackets() throws Exception {
+        List<Packet> packets = new ArrayList<>();
+        int[] read = {0};
+        boolean[] closed = {false};
+        PacketStream stream = AbstractPacketStream.of(() -> {
+            if (read[0] == 10) return null;
+            Packet packet = new Packet(REGISTRY, PacketType.KeepAlive);
+            packets.add(packet);
+            return new PacketData(read[0]++, packet);
+        });
+        stream.start();
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PacketPublisher(stream, () -> closed[0] = true, Runnable::run).subscribe(subscriber);
+        assertEquals(0, read[0]);
+
+        subscriber.subscription.request(3);
+        assertEquals(3, subscriber.received.size());
+        assertEquals(3, read[0]);
+
+        subscriber.subscription.request(2);
+        assertEquals(5, subscriber.received.size());
+        assertFalse(subscriber.completed);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertEquals(10, subscriber.received.size());
+        assertTrue(subscriber.completed);
+        assertTrue(closed[0]);
+        for (int i = 0; i < 10; i++) {
+            assertEquals((long) i, (long) subscriber.received.get(i));
+            assertEquals(0, packets.get(i).getBuf().refCnt());
+        }
+    }
+
+    @Test
+    public void testCancelReleasesPendingPackets() throws Exception {
+        List<Packet> packets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            packets.add(new Packet(REGISTRY, PacketType.KeepAlive));
+        }
+        int[] index = {0};
+        PacketStream stream = AbstractPacketStream.of(() ->
+                index[0] < packets.size() ? new PacketData(index[0], packets.get(index[0]++)) : null);
+        stream.start();
+        stream.addFilter(new DuplicatingFilter());
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PacketPublisher(stream, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertEquals(1, subscriber.received.size());
+        assertEquals(1, packets.get(0).getBuf().refCnt()); // held by the buffered duplicate
+
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.received.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals(1, index[0]); // nothing is read after cancelling
+        assertEquals(0, packets.get(0).getBuf().refCnt()); // the buffered duplicate has been released
+        for (Packet packet : packets.subList(1, packets.size())) {
+            packet.release();
+        }
+    }
+
+    @Test
+    public void testNonPositiveRequestSignalsError() throws Exception {
+        PacketStream stream = AbstractPacketStream.of(() -> null);
+        stream.start();
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new PacketPublisher(stream, Runnable::run).subscribe(subscriber);
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertFalse(subscriber.completed);
+    }
+
+    /**
+     * Emits a second, retained copy of every packet one millisecond later, so some packets are still buffered in the
+     * stream when the first one is delivered.
+     */
+    private static class DuplicatingFilter implements StreamFilter {
+        @Override
+        public String getName() {
+            return "duplicate";
+        }
+
+        @Override
+        public void init(Studio studio, JsonObject config) {
+        }
+
+        @Override
+        public void onStart(PacketStream stream) {
+        }
+
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) {
+            stream.insert(new PacketData(data.getTime() + 1, data.getPacket().retain()));
+            return true;
+        }
+
+        @Override
+        public void onEnd(PacketStream stream, long timestamp) {
+        }
+    }
+}
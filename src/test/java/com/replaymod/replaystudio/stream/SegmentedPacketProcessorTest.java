@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.stream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.replaymod.replaystudio.PacketData;
+import com.replaymod.replaystudio.Studio;
+import com.replaymod.replaystudio.filter.ChangeTimestampFilter;
+import com.replaymod.replaystudio.filter.StreamFilter;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import com.replaymod.replaystudio.util.IOSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedPacketProcessorTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Creates an input with runs of three packets with the same timestamp. All created packets are added to the
+     * given list.
+     */
+    private static IOSupplier<PacketData> input(int count, List<Packet> created) {
+        int[] index = {0};
+        return () -> {
+            if (index[0] >= count) return null;
+            Packet packet = new Packet(REGISTRY, PacketType.KeepAlive);
+            created.add(packet);
+            int i = index[0]++;
+            return new PacketData(i / 3 * 10, packet);
+        };
+    }
+
+    private static List<Long> processSegmented(ExecutorService executor, int count, List<PacketStream.FilterInfo> filters)
+            throws IOException {
+        List<Long> times = new ArrayList<>();
+        new SegmentedPacketProcessor(executor, 3, 4).process(input(count, new ArrayList<>()), filters, data -> {
+            times.add(data.getTime());
+            data.release();
+        });
+        return times;
+    }
+
+    private static List<Long> processSequential(int count, List<PacketStream.FilterInfo> filters) throws IOException {
+        IOSupplier<PacketData> input = input(count, new ArrayList<>());
+        AbstractPacketStream stream = AbstractPacketStream.of(() -> {
+            try {
+                return input.get();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        for (PacketStream.FilterInfo info : filters) {
+            stream.addFilter(info.getFilter(), info.getFrom(), info.getTo());
+        }
+        List<Long> times = new ArrayList<>();
+        PacketData data;
+        while ((data = stream.next()) != null) {
+            times.add(data.getTime());
+            data.release();
+        }
+        for (PacketData remaining : stream.end()) {
+            times.add(remaining.getTime());
+            remaining.release();
+        }
+        return times;
+    }
+
+    @Test
+    public void testOrderIsKeptAndSegmentsOnlyEndBetweenTimestamps() throws IOException {
+        List<Packet> created = new ArrayList<>();
+        List<PacketData> output = new ArrayList<>();
+        new SegmentedPacketProcessor(executor, 3, 4).process(input(1000, created),
+                Collections.singletonList(new PacketStream.FilterInfo(new SegmentEndMarker(), -1, -1)), output::add);
+
+        int markers = 0;
+        int next = 0;
+        for (int i = 0; i < output.size(); i++) {
+            PacketData data = output.get(i);
+            if (data.getPacket().getType() == PacketType.Respawn) {
+                markers++;
+                // A segment must never end in the middle of packets with the same timestamp
+                if (i + 1 < output.size()) {
+                    assertTrue(output.get(i + 1).getTime() > data.getTime());
+                }
+            } else {
+                assertEquals(created.get(next++), data.getPacket());
+            }
+            data.release();
+        }
+        assertEquals(created.size(), next);
+        assertTrue("expected multiple segments but got " + markers, markers > 1);
+    }
+
+    @Test
+    public void testSameResultAsSequentialStream() throws IOException {
+        List<PacketStream.FilterInfo> filters = new ArrayList<>();
+        ChangeTimestampFilter timestamps = new ChangeTimestampFilter();
+        JsonObject config = new JsonObject();
+        config.addProperty("offset", 7);
+        JsonObject ramp = new JsonObject();
+        ramp.addProperty("from", 1000);
+        ramp.addProperty("speed", 3);
+        JsonArray ramps = new JsonArray();
+        ramps.add(ramp);
+        config.add("ramps", ramps);
+        timestamps.init(null, config);
+        filters.add(new PacketStream.FilterInfo(new DropEveryOtherFilter(), -1, -1));
+        filters.add(new PacketStream.FilterInfo(timestamps, 500, -1));
+
+        assertEquals(processSequential(5000, filters), processSegmented(executor, 5000, filters));
+    }
+
+    @Test
+    public void testPacketsAreReleasedWhenFilterFails() {
+        List<Packet> created = new ArrayList<>();
+        try {
+            new SegmentedPacketProcessor(executor, 3, 4).process(input(1000, created),
+                    Collections.singletonList(new PacketStream.FilterInfo(new FailingFilter(2000), -1, -1)),
+                    PacketData::release);
+            fail("Expected filter failure");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        for (Packet packet : created) {
+            assertEquals(0, packet.getBuf().refCnt());
+        }
+    }
+
+    private static abstract class SegmentSafeFilter implements StreamFilter {
+        @Override
+        public String getName() {
+            return getClass().getSimpleName();
+        }
+
+        @Override
+        public void init(Studio studio, JsonObject config) {
+        }
+
+        @Override
+        public void onStart(PacketStream stream) {
+        }
+
+        @Override
+        public boolean isSegmentSafe() {
+            return true;
+        }
+
+        @Override
+        public void onEnd(PacketStream stream, long timestamp) {
+        }
+    }
+
+    /**
+     * Marks the end of every segment with a Respawn packet.
+     */
+    private static class SegmentEndMarker extends SegmentSafeFilter {
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) {
+            return true;
+        }
+
+        @Override
+        public void onEnd(PacketStream stream, long timestamp) {
+            stream.insert(timestamp, new Packet(REGISTRY, PacketType.Respawn));
+        }
+    }
+
+    private static class DropEveryOtherFilter extends SegmentSafeFilter {
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) {
+            return data.getTime() % 20 == 0;
+        }
+    }
+
+    private static class FailingFilter extends SegmentSafeFilter {
+        private final long failAt;
+
+        FailingFilter(long failAt) {
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean onPacket(PacketStream stream, PacketData data) throws IOException {
+            if (data.getTime() >= failAt) {
+                throw new IOException("failed");
+            }
+            return true;
+        }
+    }
+}
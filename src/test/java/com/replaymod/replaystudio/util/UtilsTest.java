@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2026
+ *
+ * This file is part of ReplayStudio.
+ *
+ * ReplayStudio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ReplayStudio is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ReplayStudio.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.replaymod.replaystudio.util;
+
+import com.github.steveice10.netty.buffer.ByteBuf;
+import com.github.steveice10.netty.buffer.PooledByteBufAllocator;
+import com.github.steveice10.netty.buffer.Unpooled;
+import com.github.steveice10.netty.util.ResourceLeakDetector;
+import com.github.steveice10.packetlib.tcp.io.ByteBufNetInput;
+import com.github.steveice10.packetlib.tcp.io.ByteBufNetOutput;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.packet.State;
+import com.replaymod.replaystudio.lib.viaversion.api.protocol.version.ProtocolVersion;
+import com.replaymod.replaystudio.protocol.Packet;
+import com.replaymod.replaystudio.protocol.PacketType;
+import com.replaymod.replaystudio.protocol.PacketTypeRegistry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UtilsTest {
+    private static final PacketTypeRegistry REGISTRY = PacketTypeRegistry.get(ProtocolVersion.v1_12_2, State.PLAY);
+
+    private static ResourceLeakDetector.Level previousLevel;
+
+    @BeforeClass
+    public static void enableLeakDetection() {
+        previousLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+    }
+
+    @AfterClass
+    public static void restoreLeakDetection() {
+        ResourceLeakDetector.setLevel(previousLevel);
+    }
+
+    private static byte[] compressible(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 7);
+        }
+        return bytes;
+    }
+
+    private static byte[] incompressible(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes and reads back a packet with the given payload.
+     * @return whether the read packet was inflated into a pooled buffer
+     */
+    private boolean roundTrip(byte[] payload, byte[] dictionary) throws IOException {
+        PooledByteBufAllocator alloc = new PooledByteBufAllocator(false);
+        ByteBuf buf = Unpooled.buffer();
+        Packet packet = new Packet(REGISTRY, PacketType.ChunkData, Unpooled.wrappedBuffer(payload));
+        try {
+            Utils.writeCompressedPacket(new ByteBufNetOutput(buf), packet, dictionary);
+        } finally {
+            packet.release();
+        }
+
+        Packet read = Utils.readCompressedPacket(REGISTRY, new ByteBufExtNetInput(buf), dictionary, alloc);
+        ByteBuf readBuf = read.getBuf();
+        boolean pooled = readBuf.alloc() == alloc;
+        try {
+            assertEquals(PacketType.ChunkData, read.getType());
+            byte[] readPayload = new byte[read.getBuf().readableBytes()];
+            read.getBuf().getBytes(read.getBuf().readerIndex(), readPayload);
+            assertArrayEquals(payload, readPayload);
+            assertEquals(0, buf.readableBytes());
+        } finally {
+            read.release();
+        }
+
+        if (pooled) {
+            assertEquals(0, readBuf.refCnt());
+        }
+        assertEquals(1, buf.refCnt()); // any slices of the input must have been released
+        buf.release();
+        return pooled;
+    }
+
+    @Test
+    public void compressedPacketRoundTrip() throws IOException {
+        assertTrue(roundTrip(compressible(16 * 1024), null));
+    }
+
+    @Test
+    public void compressedPacketWithDictionaryRoundTrip() throws IOException {
+        assertTrue(roundTrip(compressible(16 * 1024), compressible(1024)));
+    }
+
+    @Test
+    public void uncompressedPacketRoundTrip() throws IOException {
+        assertFalse(roundTrip(incompressible(64), null));
+    }
+
+    @Test
+    public void packetWithoutDictionaryKeepsFraming() throws IOException {
+        byte[] payload = incompressible(64);
+        ByteBuf buf = Unpooled.buffer();
+        Packet packet = new Packet(REGISTRY, PacketType.ChunkData, Unpooled.wrappedBuffer(payload));
+        try {
+            Utils.writeCompressedPacket(new ByteBufNetOutput(buf), packet);
+        } finally {
+            packet.release();
+        }
+
+        int prefix = new ByteBufNetInput(buf).readVarInt();
+        assertEquals(0, prefix & 1); // not compressed
+        assertEquals(buf.readableBytes(), prefix >> 1);
+        buf.readerIndex(0);
+
+        Packet read = Utils.readCompressedPacket(REGISTRY, new ByteBufExtNetInput(buf));
+        try {
+            assertEquals(PacketType.ChunkData, read.getType());
+            assertEquals(payload.length, read.getBuf().readableBytes());
+            assertEquals(0, buf.readableBytes());
+        } finally {
+            read.release();
+            buf.release();
+        }
+    }
+}